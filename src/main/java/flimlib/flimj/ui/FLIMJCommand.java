@@ -138,7 +138,7 @@ public class FLIMJCommand implements Command {
 		mainCtrl.setFitProcessor(fp);
 
 		fp.refreshControllers();
-		fp.updateFit();
+		fp.requestPreviewFit();
 
 		return true;
 	}
@@ -0,0 +1,146 @@
+package flimlib.flimj.ui;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import javafx.application.Platform;
+
+/**
+ * A handle to a long-running job (e.g. dataset fitting or binning) submitted to the fit processor.
+ * The job runs in the background and reports its progress through the handle, can be asked to
+ * stop with {@link #cancel()} and notifies the UI thread when it finishes. Progress is counted
+ * with a striped counter so that many fitting threads can report without contending.
+ */
+public class FitJob {
+
+	private final CompletableFuture<Void> future;
+
+	/** The number of work items done */
+	private final LongAdder completed = new LongAdder();
+
+	/** The number of work items, or -1 if unknown */
+	private volatile long total = -1;
+
+	/** The time (in ns) when counting started */
+	private volatile long startTime;
+
+	private volatile boolean cancelled;
+
+	private FitJob(final Consumer<FitJob> task, final Executor executor) {
+		this.future = CompletableFuture.runAsync(() -> {
+			if (!cancelled)
+				task.accept(this);
+		}, executor);
+	}
+
+	/**
+	 * Starts <code>task</code> on <code>executor</code>.
+	 *
+	 * @param task     the work, which should check {@link #isCancelled()} regularly and report
+	 *                 its progress with {@link #setTotal(long)} and {@link #addCompleted(long)}
+	 * @param executor the executor to run the task on
+	 * @return the handle to the job
+	 */
+	public static FitJob submit(final Consumer<FitJob> task, final Executor executor) {
+		return new FitJob(task, executor);
+	}
+
+	/**
+	 * Called by the task to announce the amount of work and (re)start counting.
+	 *
+	 * @param total the number of work items (e.g. fits)
+	 */
+	public void setTotal(final long total) {
+		completed.reset();
+		startTime = System.nanoTime();
+		this.total = total;
+	}
+
+	/**
+	 * Called by the task (from any thread) when work items are done.
+	 *
+	 * @param n the number of items done
+	 */
+	public void addCompleted(final long n) {
+		completed.add(n);
+	}
+
+	/**
+	 * @return the progress in [0, 1], or -1 if unknown
+	 */
+	public double getProgress() {
+		final long total = this.total;
+		return total > 0 ? Math.min((double) completed.sum() / total, 1) : -1;
+	}
+
+	/**
+	 * @return the average number of work items done per second, or 0 if unknown
+	 */
+	public double getThroughput() {
+		if (total < 0)
+			return 0;
+		final double elapsed = (System.nanoTime() - startTime) / 1e9;
+		return elapsed > 0 ? completed.sum() / elapsed : 0;
+	}
+
+	/**
+	 * @return the estimated time (in seconds) until the job is done, or NaN if unknown
+	 */
+	public double getETA() {
+		final long total = this.total;
+		final double throughput = getThroughput();
+		return throughput > 0 ? Math.max(total - completed.sum(), 0) / throughput : Double.NaN;
+	}
+
+	/**
+	 * Asks the job to stop. A job that has not started yet is skipped, a running job stops at the
+	 * next opportunity and keeps what it has done so far.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * @return <code>true</code> if {@link #cancel()} has been called
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * @return <code>true</code> if the job has finished, whether normally, by cancellation or
+	 *         with an error
+	 */
+	public boolean isDone() {
+		return future.isDone();
+	}
+
+	/**
+	 * @return the error that terminated the job, or <code>null</code> if there is none (yet)
+	 */
+	public Throwable getError() {
+		if (!future.isCompletedExceptionally())
+			return null;
+		try {
+			future.join();
+		} catch (CompletionException e) {
+			return e.getCause();
+		}
+		return null;
+	}
+
+	/**
+	 * Registers a callback run on the UI thread when the job finishes. If the job has already
+	 * finished, the callback is scheduled immediately.
+	 *
+	 * @param callback the callback, receiving this handle
+	 * @return this handle
+	 */
+	public FitJob whenDone(final Consumer<FitJob> callback) {
+		future.whenComplete((v, e) -> Platform.runLater(() -> callback.accept(this)));
+		return this;
+	}
+}
@@ -3,33 +3,41 @@ package flimlib.flimj.ui;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import net.imagej.ops.OpService;
-import net.imglib2.Cursor;
+import net.imglib2.Interval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.img.Img;
 import net.imglib2.img.array.ArrayImgs;
-import net.imglib2.outofbounds.OutOfBoundsPeriodicFactory;
-import net.imglib2.type.numeric.real.DoubleType;
 import net.imglib2.type.numeric.real.FloatType;
 import net.imglib2.view.Views;
 
 import org.scijava.Context;
+import org.scijava.log.LogService;
 import org.scijava.service.Service;
 
 import flimlib.flimj.FitParams;
 import flimlib.flimj.FitResults;
-import flimlib.flimj.FlimOps;
 import flimlib.flimj.ParamEstimator;
 import flimlib.flimj.fitworker.FitWorker.FitEventHandler;
+import flimlib.flimj.ui.TiledFitter.TileListener;
 import flimlib.flimj.ui.controller.AbstractCtrl;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
+import javafx.util.Duration;
 
 /**
  * ProcessingService
@@ -42,6 +50,11 @@ public class FitProcessor {
 		/** Phasor */
 	}
 
+	/** The kinds of state changes the controllers may depend on */
+	public static enum Change {
+		CURSOR, PARAMS, THRESHOLD, BINNING, IRF, PREVIEW_FIT, DATASET_FIT
+	}
+
 	private final Context ctx;
 
 	private final OpService ops;
@@ -52,16 +65,22 @@ public class FitProcessor {
 
 	private FitResults results;
 
-	private FitEventHandler<FloatType> FitEventHandler;
-
-	private double fitProgress;
-
 	private boolean isPickingIRF, allMask;
 
+	/** Whether datasets are fitted in coarse-to-fine passes (see {@link InterlacedOrder}) */
+	private boolean coarseFirst;
+
 	private RandomAccessibleInterval<FloatType> origTrans, binnedTrans, origIntensity;
 
 	private Img<FloatType> dispParams, irfIntensity, fitStatus;
 
+	/** The maps and preview options shown before a dataset fit replaced them with its live maps */
+	private Img<FloatType> preLiveDispParams, preLiveFitStatus;
+
+	private List<String> preLivePreviewOptions;
+
+	private SummedAreaBinner binner;
+
 	private String fitType;
 
 	private List<String> contextualPreviewOptions, persistentPreviewOptions;
@@ -72,14 +91,44 @@ public class FitProcessor {
 
 	private int nParam, previewX, previewY, binRadius;
 
+	/** The bin radius <code>binnedTrans</code> was binned with */
+	private int binnedTransRadius;
+
 	private int axisOrder[];
 
-	private float[] globalTrans;
+	/** Follows the threshold to sum the global transient incrementally */
+	private GlobalTransAccumulator globalTransAccumulator;
 
 	private AbstractCtrl[] controllers;
 
+	/** The changes since the controllers were last refreshed, only accessed from UI thread */
+	private final EnumSet<Change> changes = EnumSet.noneOf(Change.class);
+
+	/**
+	 * The number of controller refreshes skipped because nothing they depend on changed, in all
+	 * and among those for dataset fit results. Only accessed from UI thread.
+	 */
+	private long skippedRefreshes, skippedDatasetFitRefreshes;
+
 	private final ExecutorService executor;
 
+	/** Runs preview fits off the UI thread, one at a time */
+	private final ExecutorService previewExecutor;
+
+	/** Incremented on each preview request, only the latest one is fitted and published */
+	private final AtomicLong previewGeneration;
+
+	/** The period of refreshing the controllers during a dataset fit */
+	private static final Duration LIVE_REFRESH_PERIOD = Duration.millis(250);
+
+	/** Refreshes the controllers during a dataset fit, only accessed from UI thread */
+	private Timeline liveRefresh;
+
+	private final TiledFitter tiledFitter;
+
+	/** The statistics of the preview images, versioned by the data they derive from */
+	private final StatsCache statsCache = new StatsCache();
+
 	static {
 		// z + sum[a_i * exp(-t / tau_i)]
 		MULTI_EXP = (t, param) -> {
@@ -100,6 +149,9 @@ public class FitProcessor {
 		this.irfInfoParams = DEFAULT_IRF_INFO;
 		this.results = new FitResults();
 		this.executor = Executors.newFixedThreadPool(1);
+		this.previewExecutor = Executors.newSingleThreadExecutor();
+		this.previewGeneration = new AtomicLong();
+		this.tiledFitter = new TiledFitter(ops, Runtime.getRuntime().availableProcessors());
 		// trigger setBinning() at start
 		this.binRadius = -1;
 		init();
@@ -113,7 +165,7 @@ public class FitProcessor {
 		long[] perm = swapOutLtAxis(new long[] {0, 1, 2}, params.ltAxis);
 		axisOrder = new int[] {(int) perm[0], (int) perm[1], (int) perm[2]};
 
-		binnedTrans = origTrans = params.transMap;
+		origTrans = params.transMap;
 
 		// allocate buffers
 		params.trans = new float[(int) params.transMap.dimension(params.ltAxis)];
@@ -136,6 +188,8 @@ public class FitProcessor {
 		origIntensity = estimator.getIntensityMap();
 		estimator.estimateStartEnd();
 		params.transMap = tmpTransMap;
+		binner = new SummedAreaBinner(origTrans, origIntensity, axisOrder);
+		globalTransAccumulator = new GlobalTransAccumulator(origTrans, origIntensity, axisOrder);
 		params.getReturnCodeMap = true;
 	}
 
@@ -147,8 +201,45 @@ public class FitProcessor {
 	 * Refreshes all controllers. Must be called from UI thread.
 	 */
 	public void refreshControllers() {
+		changes.addAll(EnumSet.allOf(Change.class));
+		refreshChangedControllers();
+	}
+
+	/**
+	 * Records changes to be propagated on the next refresh of the controllers. Must be called from
+	 * UI thread.
+	 *
+	 * @param changed the changes
+	 */
+	public void markChanged(Change... changed) {
+		Collections.addAll(changes, changed);
+	}
+
+	/**
+	 * Must be called from UI thread.
+	 *
+	 * @return the number of controller refreshes skipped so far
+	 */
+	public long getSkippedRefreshCount() {
+		return skippedRefreshes;
+	}
+
+	/**
+	 * Refreshes the controllers depending on any of the changes recorded since the last refresh.
+	 * Must be called from UI thread.
+	 */
+	private void refreshChangedControllers() {
+		// controllers may record new changes while refreshing
+		final EnumSet<Change> changed = EnumSet.copyOf(changes);
+		changes.clear();
+		final boolean datasetFit = changed.contains(Change.DATASET_FIT);
 		for (AbstractCtrl controller : controllers) {
-			controller.requestRefresh();
+			if (Collections.disjoint(controller.getDependencies(), changed)) {
+				skippedRefreshes++;
+				if (datasetFit)
+					skippedDatasetFitRefreshes++;
+			} else
+				controller.requestRefresh();
 		}
 	}
 
@@ -166,6 +257,7 @@ public class FitProcessor {
 		newParams.trans = params.trans;
 		newParams.transMap = params.transMap;
 		this.params = newParams;
+		changes.addAll(EnumSet.allOf(Change.class));
 	}
 
 	/**
@@ -205,15 +297,105 @@ public class FitProcessor {
 		return ctx.service(c);
 	}
 
-	public void updateFit() {
-		updateFit(true);
+	/**
+	 * Fits the preview transient in the background and publishes the results to the controllers.
+	 * Requests made while a fit is running are coalesced so that only the newest parameters are
+	 * fitted, and results of a fit superseded by a newer request are dropped. Must be called from
+	 * UI thread.
+	 */
+	public void requestPreviewFit() {
+		final long generation = previewGeneration.incrementAndGet();
+		// the controllers keep editing params while the worker fits
+		final FitParams<FloatType> snapshot = snapshotParams(params);
+		final String snapshotFitType = fitType;
+		final boolean snapshotAllMask = allMask;
+
+		previewExecutor.execute(() -> {
+			// a newer request is queued behind this one
+			if (generation != previewGeneration.get())
+				return;
+
+			FitResults fr = null;
+			try {
+				fr = fit(snapshot, snapshotFitType, snapshotAllMask, true, null, null,
+						() -> generation != previewGeneration.get());
+			} catch (RuntimeException e) {
+				getService(LogService.class).error("Preview fit failed", e);
+			}
+
+			final FitResults fitted = fr;
+			Platform.runLater(() -> publishPreviewFit(generation, snapshot, fitted));
+		});
+	}
+
+	/**
+	 * Installs the results of a preview fit unless a newer fit has been requested in the meantime.
+	 *
+	 * @param generation the generation of the fit
+	 * @param snapshot   the parameters fitted
+	 * @param fr         the results, or <code>null</code> if the fit failed
+	 */
+	private void publishPreviewFit(long generation, FitParams<FloatType> snapshot,
+			FitResults fr) {
+		if (generation != previewGeneration.get() || controllers == null)
+			return;
+
+		if (fr != null) {
+			// same side effects on params as a fit on the UI thread (e.g. RLD-triggering infs)
+			if (snapshot.param.length == params.param.length
+					&& snapshot.paramFree.length == params.paramFree.length) {
+				System.arraycopy(snapshot.param, 0, params.param, 0, params.param.length);
+				System.arraycopy(snapshot.paramFree, 0, params.paramFree, 0,
+						params.paramFree.length);
+			}
+			fr.intensityMap = this.results.intensityMap;
+			this.results = fr;
+			changes.add(Change.PREVIEW_FIT);
+		}
+		refreshChangedControllers();
+	}
+
+	/**
+	 * Copies the preview parameters with private buffers.
+	 *
+	 * @param params the parameters
+	 * @return the copy, sharing no arrays with <code>params</code>
+	 */
+	private static FitParams<FloatType> snapshotParams(FitParams<FloatType> params) {
+		final FitParams<FloatType> snapshot = params.copy();
+		snapshot.trans = params.trans.clone();
+		snapshot.param = params.param.clone();
+		snapshot.paramFree = params.paramFree.clone();
+		if (params.instr != null)
+			snapshot.instr = params.instr.clone();
+		snapshot.transMap = ArrayImgs.floats(snapshot.trans,
+				swapInLtAxis(new long[] {1, 1, snapshot.trans.length}, params.ltAxis));
+		if (params.paramMap != null)
+			snapshot.paramMap = ArrayImgs.floats(snapshot.param,
+					swapInLtAxis(new long[] {1, 1, snapshot.param.length}, params.ltAxis));
+		return snapshot;
 	}
 
-	public void updateFit(boolean preview) {
+	/**
+	 * Fits <code>params</code>. Only touches the state of the fit processor through
+	 * {@link #getGlobalTrans(float)} so that it can be called from any thread.
+	 *
+	 * @param params      the parameters, modified in the same way as the op modifies them
+	 * @param fitType     the algorithm
+	 * @param allMask     whether the global transient is fitted
+	 * @param preview     whether a single transient (as opposed to the dataset) is fitted
+	 * @param handler     the fit event handler of fits done in one op call
+	 * @param listener    notified of each tile of fits done tile by tile
+	 * @param isCancelled polled between parts of a dataset fit
+	 * @return the results, or <code>null</code> if cancelled before anything was fitted
+	 */
+	private FitResults fit(FitParams<FloatType> params, String fitType, boolean allMask,
+			boolean preview, FitEventHandler<FloatType> handler, TileListener listener,
+			BooleanSupplier isCancelled) {
 		// global estimate of taus
 		float[] globalParams = null;
 		if ("Global".equals(fitType) && preview) {
-			updateGlobalTrans();
+			final float[] globalTrans = getGlobalTrans(params.iThresh);
 			for (int i = 0; i < params.param.length; i++) {
 				// trigger rld for free parameters and taus
 				if (params.paramFree[i] || (i - 1) % 2 == 1) {
@@ -233,7 +415,7 @@ public class FitProcessor {
 
 		// use globalTrans as trans in allMask mode
 		if (allMask) {
-			updateGlobalTrans();
+			final float[] globalTrans = getGlobalTrans(params.iThresh);
 			for (int i = 0; i < params.trans.length; i++)
 				params.trans[i] = globalTrans[i];
 		}
@@ -247,42 +429,63 @@ public class FitProcessor {
 				params.param[i] = Float.POSITIVE_INFINITY;
 		}
 
-		FitResults fr;
 		if ("Global".equals(fitType) && preview)
-			fr = (FitResults) ops.run("flim.fitLMA", params);
+			return (FitResults) ops.run("flim.fitLMA", params);
+		else if (!preview && tiledFitter.supports(fitType, params))
+			// split large datasets into tiles and fit on all cores
+			return tiledFitter.fit(fitType, params, listener, isCancelled);
 		else
-			fr = (FitResults) ops.run("flim.fit" + fitType, params, null, null, FitEventHandler);
-
-		fr.intensityMap = this.results.intensityMap;
-		this.results = fr;
+			return (FitResults) ops.run("flim.fit" + fitType, params, null, null, handler);
 	}
 
 	public void setBinning(int size) {
-		allMask = false;
-		int kernelSize = size;
-		if (size == -1) {
-			// FIXME: divide by 2 after https://github.com/imagej/imagej-ops/issues/628 is fixed
-			kernelSize = (int) Math.max(origIntensity.dimension(axisOrder[0]),
-					origIntensity.dimension(axisOrder[1]));
-			allMask = true;
-		}
+		applyBinning(size, size != binRadius ? binIntensity(size) : null);
+	}
+
+	/**
+	 * Bins the dataset in the background. The new binning takes effect on the UI thread before
+	 * the completion callbacks of the returned job are run.
+	 *
+	 * @param size the bin radius, or -1 to bin all pixels together
+	 * @return the handle to the job
+	 */
+	public FitJob submitBinning(int size) {
+		return submitJob(job -> {
+			final Img<FloatType> intensity = binIntensity(size);
+			Platform.runLater(() -> applyBinning(size, intensity));
+		});
+	}
+
+	/**
+	 * @param size the bin radius, or -1 to bin all pixels together
+	 * @return the binned intensity image
+	 */
+	private Img<FloatType> binIntensity(int size) {
+		if (size == -1)
+			// every pixel sees the sum of the whole image
+			return binner.binIntensityFull();
+		else if (size > 0)
+			return binner.binIntensity(size);
+		else
+			return (Img<FloatType>) origIntensity;
+	}
+
+	/**
+	 * @param size      the bin radius, or -1 to bin all pixels together
+	 * @param intensity the intensity image binned with <code>size</code>
+	 */
+	private void applyBinning(int size, Img<FloatType> intensity) {
+		allMask = size == -1;
 
 		if (size != binRadius) {
 			// recalculate threshold to equalize per-pixel threshold
 			params.iThresh = Math.round((double) params.iThresh //
 					/ ((2 * binRadius + 1) * (2 * binRadius + 1))
 					* ((2 * size + 1) * (2 * size + 1)));
-			// invalidate cached
-			binnedTrans = null;
 			binRadius = size;
-			if (size > 0) {
-				Img<DoubleType> kernel = FlimOps.makeSquareKernel(kernelSize * 2 + 1);
-				results.intensityMap = (Img<FloatType>) (allMask
-						? ops.filter().convolve(origIntensity, kernel,
-								new OutOfBoundsPeriodicFactory<>())
-						: ops.filter().convolve(origIntensity, kernel));
-			} else
-				results.intensityMap = (Img<FloatType>) origIntensity;
+			results.intensityMap = intensity;
+			statsCache.invalidate(StatsCache.Source.INTENSITY);
+			markChanged(Change.BINNING, Change.THRESHOLD);
 		}
 
 		// load trans after binning
@@ -313,10 +516,16 @@ public class FitProcessor {
 				nParam = 2 * params.nComp + 1;
 				break;
 		}
+		markChanged(Change.PARAMS);
+	}
+
+	public void setCoarseFirst(boolean coarseFirst) {
+		this.coarseFirst = coarseFirst;
 	}
 
 	public void setIsPickingIRF(boolean isPickingIRF) {
 		this.isPickingIRF = isPickingIRF;
+		markChanged(Change.IRF);
 	}
 
 	public boolean isPickingIRF() {
@@ -335,6 +544,7 @@ public class FitProcessor {
 			ParamEstimator<FloatType> est = new ParamEstimator<>(irfInfoParams);
 			est.estimateStartEnd();
 			irfIntensity = est.getIntensityMap();
+			statsCache.invalidate(StatsCache.Source.IRF_INTENSITY);
 
 			if (!persistentPreviewOptions.contains("IRF Intensity"))
 				persistentPreviewOptions.add("IRF Intensity");
@@ -347,6 +557,7 @@ public class FitProcessor {
 			// if is currently in picking mode, exit immediately
 			isPickingIRF = false;
 		}
+		markChanged(Change.IRF);
 	}
 
 	public void updateIRFRange() {
@@ -382,6 +593,7 @@ public class FitProcessor {
 	}
 
 	public void setPreviewPos(final int x, final int y, final boolean irf) {
+		markChanged(Change.CURSOR);
 		if (irf) {
 			fillTrans(irfInfoParams.transMap, irfInfoParams.trans, x, y, axisOrder, 0);
 			updateIRFRange();
@@ -389,11 +601,13 @@ public class FitProcessor {
 			previewX = x;
 			previewY = y;
 			if (allMask) {
-				updateGlobalTrans();
+				final float[] globalTrans = getGlobalTrans(params.iThresh);
 				for (int i = 0; i < params.trans.length; i++)
 					params.trans[i] = globalTrans[i];
-			} else
-				fillTrans(origTrans, params.trans, x, y, axisOrder, binRadius);
+			} else if (binRadius > 0)
+				binner.fillTrans(params.trans, x, y, binRadius);
+			else
+				fillTrans(origTrans, params.trans, x, y, axisOrder, 0);
 		}
 	}
 
@@ -422,25 +636,41 @@ public class FitProcessor {
 		}
 	}
 
-	public void fitDataset() {
-		fitProgress = 0;
-
-		// use cached trans if available
-		if (binnedTrans == null) {
-			binnedTrans = binRadius > 0
-					? ops.filter().convolve(origTrans, FlimOps.makeSquareKernel(binRadius * 2 + 1))
-					: origTrans;
+	/**
+	 * Fits the whole dataset in the background with the current parameters. If the job is
+	 * cancelled, the pixels fitted so far are kept: the rest of the parameter map is NaN and their
+	 * fit status is {@link TiledFitter#RET_NOT_FITTED}. The results take effect on the UI thread
+	 * before the completion callbacks of the returned job are run. Datasets fitted tile by tile
+	 * are published while being fitted, and the controllers are notified of the updated regions
+	 * every {@link #LIVE_REFRESH_PERIOD}. The number of refreshes for its results that some
+	 * controllers skipped is logged at debug level when it finishes.
+	 *
+	 * @param previewOptions the preview options of the fitted parameters
+	 * @return the handle to the job
+	 */
+	public FitJob submitFitDataset(List<String> previewOptions) {
+		// the controllers keep editing params while the dataset is fitted
+		final FitParams<FloatType> snapshot = snapshotParams(params);
+		final String snapshotFitType = fitType;
+		final boolean snapshotAllMask = allMask;
+		final int snapshotBinRadius = binRadius;
+		final boolean snapshotCoarseFirst = coarseFirst;
+		// both read on the UI thread, where the count is updated
+		final long skippedBefore = skippedDatasetFitRefreshes;
+		final FitJob fitJob = submitJob(job -> fitDataset(job, snapshot, snapshotFitType,
+				snapshotAllMask, snapshotBinRadius, snapshotCoarseFirst, previewOptions));
+		return fitJob.whenDone(job -> getService(LogService.class).debug("Skipped "
+				+ (skippedDatasetFitRefreshes - skippedBefore)
+				+ " controller refreshes for dataset fit results"));
+	}
 
-			// convolve may spit out small negative values that causes problem in e.g. log() in
-			// GCI_marquardt_compute_fn()
-			for (FloatType f : Views.iterable(binnedTrans))
-				f.set(Math.max(f.get(), 0));
-		}
-		// temporarily save trans and param maps for preview
-		RandomAccessibleInterval<FloatType> previewTransMap, previewParamMap;
-		previewTransMap = params.transMap;
-		params.transMap = binnedTrans;
-		previewParamMap = params.paramMap;
+	private void fitDataset(FitJob job, FitParams<FloatType> params, String fitType,
+			boolean allMask, int binRadius, boolean coarseFirst, List<String> previewOptions) {
+		final RandomAccessibleInterval<FloatType> binnedTrans = getBinnedTrans(binRadius);
+		// fit each distinct decay only once (all pixels share globalTrans in allMask mode)
+		final UniqueDecays uniqueDecays =
+				findUniqueDecays(params, fitType, allMask, binnedTrans);
+		params.transMap = uniqueDecays != null ? uniqueDecays.getTrans() : binnedTrans;
 		// tirgger RLD for free parameters and global taus
 		params.paramMap = null;
 		for (int i = 0; i < params.param.length; i++) {
@@ -450,43 +680,215 @@ public class FitProcessor {
 			}
 		}
 
-		long nTotalFits = params.transMap.dimension(axisOrder[0]) //
-				* params.transMap.dimension(axisOrder[1]);
-		long[] completed = new long[1];
-		FitEventHandler = new FitEventHandler<FloatType>() {
+		job.setTotal(params.transMap.dimension(axisOrder[0]) //
+				* params.transMap.dimension(axisOrder[1]));
+		// fits done in one op call report every pixel, tiled fits report once per tile
+		FitEventHandler<FloatType> handler = new FitEventHandler<FloatType>() {
 			@Override
 			public void onSingleComplete(int[] pos, FitParams<FloatType> params, FitResults results) {
-				synchronized (this) {
-					completed[0]++;
-					fitProgress = (double) completed[0] / nTotalFits;
-				}
+				job.addCompleted(1);
 			}
 
 			@Override
-			public void onComplete(FitParams<FloatType> params, FitResults results) {
-				synchronized (this) {
-					fitProgress = 1;
-				}
-			}
+			public void onComplete(FitParams<FloatType> params, FitResults results) {}
 		};
+		// publish tiles as they are fitted
+		final LiveFitResults live = tiledFitter.supports(fitType, params)
+				? new LiveFitResults((int) binnedTrans.dimension(axisOrder[0]),
+						(int) binnedTrans.dimension(axisOrder[1]), params.param.length, axisOrder)
+				: null;
+		// the passes are packed like distinct decays, so the two don't mix
+		final boolean interlaced = coarseFirst && live != null && uniqueDecays == null;
+		if (live != null)
+			Platform.runLater(() -> startLiveRefresh(live, previewOptions));
+
+		final FitResults fr;
+		try {
+			if (interlaced)
+				fr = fitInterlaced(job, params, fitType, binnedTrans, binRadius, live);
+			else {
+				final TileListener publisher =
+						live != null ? live.listenerFor(params.transMap, uniqueDecays) : null;
+				TileListener listener = (tile, tileResults) -> {
+					if (publisher != null)
+						publisher.onTileComplete(tile, tileResults);
+					job.addCompleted(tile.dimension(axisOrder[0]) * tile.dimension(axisOrder[1]));
+				};
+				fr = fit(params, fitType, allMask, false, handler, listener, job::isCancelled);
+			}
+		} finally {
+			if (live != null)
+				Platform.runLater(this::stopLiveRefresh);
+		}
+		// cancelled before any pixel was fitted, show the previous results again
+		if (fr == null) {
+			if (live != null)
+				Platform.runLater(this::restorePreLiveResults);
+			return;
+		}
 
-		updateFit(false);
+		if (uniqueDecays != null) {
+			fr.paramMap = uniqueDecays.scatter(fr.paramMap);
+			fr.retCodeMap = uniqueDecays.scatter(fr.retCodeMap);
+			fr.fittedMap = uniqueDecays.scatter(fr.fittedMap);
+			fr.residualsMap = uniqueDecays.scatter(fr.residualsMap);
+			fr.chisqMap = uniqueDecays.scatter(fr.chisqMap);
+		}
+		final Img<FloatType> status = ops.convert().float32(fr.retCodeMap);
+
+		Platform.runLater(() -> {
+			fr.intensityMap = this.results.intensityMap;
+			this.results = fr;
+			dispParams = fr.paramMap;
+			fitStatus = status;
+			statsCache.invalidate(StatsCache.Source.RESULTS);
+			setPreviewOptions(previewOptions);
+		});
+	}
+
+	/**
+	 * Fits the pixels of a dataset in the passes of {@link InterlacedOrder}, brightest pixels
+	 * first within each pass. After each pass, the pixels not fitted yet are approximated by
+	 * their nearest fitted neighbor so that the whole field is previewed early. If the job is
+	 * cancelled, the approximations are reset to not fitted before the results are made.
+	 *
+	 * @param job         the job reporting progress and cancellation
+	 * @param params      the fitting parameters
+	 * @param fitType     the algorithm
+	 * @param binnedTrans the transient map of the dataset
+	 * @param binRadius   the bin radius <code>binnedTrans</code> was binned with
+	 * @param live        the maps the passes are assembled into
+	 * @return the results with the assembled maps, or <code>null</code> if nothing was fitted
+	 */
+	private FitResults fitInterlaced(FitJob job, FitParams<FloatType> params, String fitType,
+			RandomAccessibleInterval<FloatType> binnedTrans, int binRadius, LiveFitResults live) {
+		final List<int[]> passes = InterlacedOrder.passes(binIntensity(binRadius), axisOrder);
+		FitResults fr = null;
+		for (int p = 0; p < passes.size() && !job.isCancelled(); p++) {
+			if (passes.get(p).length == 0)
+				continue;
+			final PixelSubset subset = new PixelSubset(binnedTrans, axisOrder, passes.get(p));
+			final FitParams<FloatType> passParams = params.copy();
+			passParams.transMap = subset.getTrans();
+			passParams.paramMap = null;
+
+			final TileListener publisher = live.listenerFor(passParams.transMap, subset);
+			final FitResults passResults = tiledFitter.fit(fitType, passParams, (tile, results) -> {
+				publisher.onTileComplete(tile, results);
+				job.addCompleted(tile.dimension(axisOrder[0]));
+			}, job::isCancelled);
+			if (passResults == null)
+				break;
+			fr = passResults;
+			// a cancelled pass leaves holes in its grid, keep the previous approximation then
+			if (p < passes.size() - 1 && !job.isCancelled())
+				live.fillFromGrid(InterlacedOrder.STRIDES[p]);
+		}
+		if (fr != null) {
+			// the approximations were only a preview of the passes that will not be fitted now
+			if (job.isCancelled())
+				live.clearApproximated();
+			// the pixels of the passes are only assembled in the live maps
+			fr.paramMap = live.getParamMap();
+			fr.retCodeMap = ops.convert().int32(live.getStatus());
+			// the other maps of the last pass only cover its packed pixels
+			fr.intensityMap = null;
+			fr.fittedMap = null;
+			fr.residualsMap = null;
+			fr.chisqMap = null;
+		}
+		return fr;
+	}
+
+	/**
+	 * Shows the maps of a dataset fit in progress and starts notifying the controllers of their
+	 * updates.
+	 *
+	 * @param live           the maps
+	 * @param previewOptions the preview options of the fitted parameters
+	 */
+	private void startLiveRefresh(LiveFitResults live, List<String> previewOptions) {
+		stopLiveRefresh();
+		preLiveDispParams = dispParams;
+		preLiveFitStatus = fitStatus;
+		preLivePreviewOptions = contextualPreviewOptions;
+		dispParams = live.getParamMap();
+		fitStatus = live.getDisplayStatus();
+		statsCache.invalidate(StatsCache.Source.RESULTS);
+		setPreviewOptions(previewOptions);
+		refreshChangedControllers();
+
+		// a bounded refresh rate keeps the cost of rendering independent of the tile rate
+		liveRefresh = new Timeline(new KeyFrame(LIVE_REFRESH_PERIOD, e -> {
+			List<Interval> dirty = live.drainDirty();
+			if (!dirty.isEmpty()) {
+				// the maps have changed in place
+				statsCache.invalidate(StatsCache.Source.RESULTS);
+				for (AbstractCtrl controller : controllers)
+					controller.requestTileRefresh(dirty);
+			}
+		}));
+		liveRefresh.setCycleCount(Timeline.INDEFINITE);
+		liveRefresh.play();
+	}
 
-		FitEventHandler = null;
+	/**
+	 * Shows the maps and preview options shown before {@link #startLiveRefresh} again, which still
+	 * match {@link #results} if the dataset fit produced nothing.
+	 */
+	private void restorePreLiveResults() {
+		dispParams = preLiveDispParams;
+		fitStatus = preLiveFitStatus;
+		statsCache.invalidate(StatsCache.Source.RESULTS);
+		setPreviewOptions(preLivePreviewOptions);
+		refreshChangedControllers();
+	}
 
-		params.paramMap = previewParamMap;
-		params.transMap = previewTransMap;
+	/**
+	 * Stops notifying the controllers of the updates of a dataset fit in progress.
+	 */
+	private void stopLiveRefresh() {
+		if (liveRefresh != null) {
+			liveRefresh.stop();
+			liveRefresh = null;
+		}
+	}
 
-		dispParams = results.paramMap;
-		fitStatus = ops.convert().float32(results.retCodeMap);
+	/**
+	 * Bins the transient map, reusing the last binned map if the radius is unchanged.
+	 *
+	 * @param binRadius the bin radius
+	 * @return the binned transient map
+	 */
+	private synchronized RandomAccessibleInterval<FloatType> getBinnedTrans(int binRadius) {
+		if (binnedTrans == null || binnedTransRadius != binRadius) {
+			binnedTrans = binRadius > 0 ? binner.binTrans(binRadius) : origTrans;
+			binnedTransRadius = binRadius;
+		}
+		return binnedTrans;
 	}
 
 	/**
-	 * @return a number between 0 and 1 that corresponds to the current percentage
-	 *         of fits completed
+	 * Groups pixels sharing the same decay for {@link #fitDataset}.
+	 *
+	 * @param params      the fitting parameters
+	 * @param fitType     the algorithm
+	 * @param allMask     whether all pixels are binned together
+	 * @param binnedTrans the binned transient map
+	 * @return the grouping, or <code>null</code> if the pixels should be fitted one by one
 	 */
-	public double getFitProgress() {
-		return fitProgress;
+	private UniqueDecays findUniqueDecays(FitParams<FloatType> params, String fitType,
+			boolean allMask, RandomAccessibleInterval<FloatType> binnedTrans) {
+		// global analysis weighs all pixels, so duplicates are not redundant there; neither are
+		// they when the threshold is derived from the intensity distribution
+		if ("Global".equals(fitType) || params.iThreshPercent > 0)
+			return null;
+		if (allMask) {
+			return UniqueDecays.broadcast(getGlobalTrans(params.iThresh),
+					(int) binnedTrans.dimension(axisOrder[0]),
+					(int) binnedTrans.dimension(axisOrder[1]), axisOrder);
+		}
+		return UniqueDecays.find(binnedTrans, axisOrder);
 	}
 
 	/**
@@ -503,6 +905,7 @@ public class FitProcessor {
 	public void setPreviewOptions(List<String> options) {
 		// remove non-persistent options
 		contextualPreviewOptions = options;
+		markChanged(Change.DATASET_FIT);
 	}
 
 	@SuppressWarnings("unchecked")
@@ -564,36 +967,52 @@ public class FitProcessor {
 	}
 
 	/**
-	 * Force recalculate <code>globalTrans</code> when required. Called upon e.g. intensity
-	 * threshold change.
+	 * Gathers the statistics of a preview image, at most once per change of its data.
+	 *
+	 * @param option       the preview option (see {@link #getPreviewImg(String)})
+	 * @param goodFitsOnly <code>true</code> to count only the pixels with a good fit status (all
+	 *                     pixels if there is no fit status)
+	 * @return the statistics
 	 */
-	public void invalidateGlobalTrans() {
-		globalTrans = null;
+	public ImageStats getStats(String option, boolean goodFitsOnly) {
+		return statsCache.get(goodFitsOnly ? option + " (good fits)" : option, sourceOf(option),
+				() -> ImageStats.of(getPreviewImg(option),
+						goodFitsOnly ? getPreviewImg("Fit Status") : null));
 	}
 
 	/**
-	 * Recalculates <code>globalTrans</code> if for the first time or when it is invalid.
+	 * @param option the preview option
+	 * @return a number that changes whenever the data of the preview image changes
 	 */
-	private void updateGlobalTrans() {
-		if (globalTrans == null) {
-			globalTrans = new float[params.trans.length];
-
-			// sum up trans values whose intensity is above threshold
-			Cursor<FloatType> intensityCsr = Views.iterable(origIntensity).localizingCursor();
-			RandomAccess<FloatType> transRA = origTrans.randomAccess();
-			while (intensityCsr.hasNext()) {
-				if (intensityCsr.next().get() < params.iThresh)
-					continue;
-
-				// origIntensity is 3D
-				transRA.setPosition(intensityCsr);
+	public long getVersion(String option) {
+		return statsCache.getVersion(sourceOf(option));
+	}
 
-				for (int i = 0; i < globalTrans.length; i++, transRA.fwd(params.ltAxis))
-					globalTrans[i] += transRA.get().get();
-			}
+	/**
+	 * @param option the preview option
+	 * @return the data the preview image derives from
+	 */
+	private static StatsCache.Source sourceOf(String option) {
+		switch (option) {
+			case "Intensity":
+				return StatsCache.Source.INTENSITY;
+			case "IRF Intensity":
+				return StatsCache.Source.IRF_INTENSITY;
+			default:
+				return StatsCache.Source.RESULTS;
 		}
 	}
 
+	/**
+	 * Safe to call from the preview worker.
+	 *
+	 * @param iThresh the intensity threshold
+	 * @return the sum of all transients whose intensity is above <code>iThresh</code>
+	 */
+	private float[] getGlobalTrans(float iThresh) {
+		return globalTransAccumulator.sumAbove(iThresh);
+	}
+
 	/**
 	 * Permute the coordinates from ltDimension-last to ltDimension-at-ltAxis.
 	 *
@@ -626,18 +1045,26 @@ public class FitProcessor {
 		return coordinates;
 	}
 
-	public void submitRunnable(Runnable runnable) {
-		try {
-			executor.submit(runnable).get();
-		} catch (Exception e) {
-			throw new RuntimeException(e);
-		}
+	/**
+	 * Runs a long job (e.g. binning or dataset fitting) in the background. Jobs run one at a time
+	 * in the order of submission.
+	 *
+	 * @param task the work
+	 * @return the handle to the job
+	 */
+	public FitJob submitJob(Consumer<FitJob> task) {
+		return FitJob.submit(task, executor);
 	}
 
 	public void destroy() {
+		getService(LogService.class)
+				.debug("Skipped " + skippedRefreshes + " controller refreshes");
 		for (AbstractCtrl controller : controllers) {
 			controller.destroy();
 		}
+		stopLiveRefresh();
 		executor.shutdownNow();
+		previewExecutor.shutdownNow();
+		tiledFitter.shutdown();
 	}
 }
@@ -0,0 +1,120 @@
+package flimlib.flimj.ui;
+
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.transform.integer.MixedTransform;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.IntervalView;
+import net.imglib2.view.MixedTransformView;
+
+/**
+ * Direct access to the <code>float[]</code> behind a 2D image that is an {@link ArrayImg} or a
+ * slice/interval view of one (e.g. a {@link net.imglib2.view.Views#hyperSlice} of a parameter
+ * map), so that hot loops can skip the {@link net.imglib2.RandomAccess} machinery.
+ */
+public final class FlatImage {
+
+	private final float[] data;
+
+	/** The array index of (0, 0) and the index steps along X and Y */
+	private final long offset, strideX, strideY;
+
+	private FlatImage(final float[] data, final long offset, final long strideX,
+			final long strideY) {
+		this.data = data;
+		this.offset = offset;
+		this.strideX = strideX;
+		this.strideY = strideY;
+	}
+
+	/**
+	 * Resolves the array behind a 2D image.
+	 *
+	 * @param img the image, may be <code>null</code>
+	 * @return the flat access, or <code>null</code> if the image is not backed by a float array
+	 *         reachable through simple views
+	 */
+	public static FlatImage of(final RandomAccessibleInterval<FloatType> img) {
+		if (img == null || img.numDimensions() < 2)
+			return null;
+		// extra dimensions (e.g. a singleton lifetime axis) must be singletons
+		for (int d = 2; d < img.numDimensions(); d++)
+			if (img.dimension(d) != 1)
+				return null;
+		final long[] strides = new long[img.numDimensions()];
+		final Object[] data = new Object[1];
+		final long offset = resolve(img, strides, data);
+		if (data[0] == null)
+			return null;
+		// all coordinates of the extra dimensions are at min
+		long extra = 0;
+		for (int d = 2; d < strides.length; d++)
+			extra += img.min(d) * strides[d];
+		return new FlatImage((float[]) data[0], offset + extra, strides[0], strides[1]);
+	}
+
+	/**
+	 * @param x the x coordinate
+	 * @param y the y coordinate
+	 * @return the value at (x, y)
+	 */
+	public float get(final int x, final int y) {
+		return data[(int) (offset + x * strideX + y * strideY)];
+	}
+
+	/**
+	 * @param other the other flat access, may be <code>null</code>
+	 * @return <code>true</code> if both read the same pixels of the same array
+	 */
+	public boolean sameAs(final FlatImage other) {
+		return other != null && data == other.data && offset == other.offset
+				&& strideX == other.strideX && strideY == other.strideY;
+	}
+
+	/**
+	 * Finds the affine map from coordinates of <code>img</code> to indices into the array behind
+	 * it.
+	 *
+	 * @param img     the image or view
+	 * @param strides receives the index step along each dimension of <code>img</code>
+	 * @param data    receives the array, left <code>null</code> if <code>img</code> is not
+	 *                supported
+	 * @return the index of the origin
+	 */
+	private static long resolve(final RandomAccessible<FloatType> img, final long[] strides,
+			final Object[] data) {
+		if (img instanceof ArrayImg) {
+			final ArrayImg<?, ?> arrayImg = (ArrayImg<?, ?>) img;
+			final Object access = arrayImg.update(null);
+			if (!(access instanceof FloatArray))
+				return 0;
+			data[0] = ((FloatArray) access).getCurrentStorageArray();
+			long stride = 1;
+			for (int d = 0; d < strides.length; d++) {
+				strides[d] = stride;
+				stride *= arrayImg.dimension(d);
+			}
+			return 0;
+		}
+		if (img instanceof IntervalView)
+			// same coordinates, only bounded
+			return resolve(((IntervalView<FloatType>) img).getSource(), strides, data);
+		if (img instanceof MixedTransformView) {
+			final MixedTransformView<FloatType> view = (MixedTransformView<FloatType>) img;
+			final MixedTransform t = view.getTransformToSource();
+			final long[] srcStrides = new long[t.numSourceDimensions()];
+			// source[d] = translation[d] (+/-) target[mapping[d]] unless component d is zero
+			long offset = resolve(view.getSource(), srcStrides, data);
+			for (int d = 0; d < srcStrides.length; d++) {
+				offset += t.getTranslation(d) * srcStrides[d];
+				if (!t.getComponentZero(d))
+					strides[t.getComponentMapping(d)] +=
+							t.getComponentInversion(d) ? -srcStrides[d] : srcStrides[d];
+			}
+			return offset;
+		}
+		return 0;
+	}
+}
@@ -0,0 +1,185 @@
+package flimlib.flimj.ui;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+/**
+ * Maintains the sum of all transients whose intensity is at or above a threshold. Pixels are
+ * sorted by intensity once, so that when the threshold moves only the transients of the pixels
+ * crossing it are added or subtracted instead of summing the whole image again.
+ */
+public class GlobalTransAccumulator {
+
+	/** The number of pixels summed by one task of a parallel reduction */
+	private static final int CHUNK = 4096;
+
+	private final RandomAccessibleInterval<FloatType> trans, intensity;
+
+	/** Indices of the X, Y and lifetime axes */
+	private final int X, Y, L;
+
+	/** Width and the number of time bins of the transient image */
+	private final int w, nBins;
+
+	/** The pixel indices (y * w + x) in ascending order of intensity, lazily built */
+	private int[] sortedPixels;
+
+	/** The intensity of each pixel in <code>sortedPixels</code> */
+	private float[] sortedIntensity;
+
+	/** The sum of the transients of all pixels and of <code>sortedPixels[first:]</code> */
+	private double[] total, sum;
+
+	/** The index of the first pixel at or above the current threshold, -1 if not summed yet */
+	private int first = -1;
+
+	/**
+	 * @param trans     the transient image
+	 * @param intensity the intensity image (same spatial size, singleton lifetime axis)
+	 * @param axisOrder the indices of X, Y and lifetime axes
+	 */
+	public GlobalTransAccumulator(final RandomAccessibleInterval<FloatType> trans,
+			final RandomAccessibleInterval<FloatType> intensity, final int[] axisOrder) {
+		this.trans = Views.zeroMin(trans);
+		this.intensity = Views.zeroMin(intensity);
+		X = axisOrder[0];
+		Y = axisOrder[1];
+		L = axisOrder[2];
+		w = (int) trans.dimension(X);
+		nBins = (int) trans.dimension(L);
+	}
+
+	/**
+	 * Moves the threshold to <code>iThresh</code> and returns the sum. The work is proportional to
+	 * the number of pixels whose intensity lies between the previous and the new threshold (but
+	 * never more than half of the image).
+	 *
+	 * @param iThresh the intensity threshold
+	 * @return the sum of all transients whose intensity is at or above <code>iThresh</code>
+	 */
+	public synchronized float[] sumAbove(final float iThresh) {
+		if (sortedPixels == null)
+			sortByIntensity();
+		final int n = sortedPixels.length;
+		final int newFirst = lowerBound(iThresh);
+
+		if (first < 0 || Math.abs(newFirst - first) > Math.min(newFirst, n - newFirst)) {
+			// summing the smaller side from scratch is cheaper than updating
+			if (newFirst >= n / 2)
+				sum = sumRange(newFirst, n);
+			else {
+				sum = total.clone();
+				subtract(sum, sumRange(0, newFirst));
+			}
+		} else if (newFirst < first)
+			// threshold lowered: pixels in [newFirst, first) join
+			add(sum, sumRange(newFirst, first));
+		else if (newFirst > first)
+			// threshold raised: pixels in [first, newFirst) leave
+			subtract(sum, sumRange(first, newFirst));
+		first = newFirst;
+
+		final float[] result = new float[nBins];
+		for (int t = 0; t < nBins; t++)
+			result[t] = (float) sum[t];
+		return result;
+	}
+
+	/**
+	 * Sorts the pixels by intensity and sums all transients on all cores.
+	 */
+	private void sortByIntensity() {
+		final int h = (int) intensity.dimension(Y);
+		final int n = w * h;
+		// sort keys: intensity in the high word (ordered as signed int), pixel index in the low word
+		final long[] keys = new long[n];
+		IntStream.range(0, h).parallel().forEach(y -> {
+			final RandomAccess<FloatType> ra = intensity.randomAccess();
+			ra.setPosition(0, L);
+			ra.setPosition(y, Y);
+			for (int x = 0; x < w; x++) {
+				ra.setPosition(x, X);
+				keys[y * w + x] = ((long) sortableBits(ra.get().get()) << 32) | (y * w + x);
+			}
+		});
+		Arrays.parallelSort(keys);
+
+		sortedPixels = new int[n];
+		sortedIntensity = new float[n];
+		IntStream.range(0, n).parallel().forEach(i -> {
+			sortedPixels[i] = (int) keys[i];
+			final int bits = (int) (keys[i] >> 32);
+			sortedIntensity[i] = Float.intBitsToFloat(bits ^ ((bits >> 31) & 0x7fffffff));
+		});
+		total = sumRange(0, n);
+	}
+
+	/**
+	 * Sums the transients of <code>sortedPixels[from:to]</code> in a parallel reduction.
+	 *
+	 * @param from the first index (inclusive)
+	 * @param to   the last index (exclusive)
+	 * @return the sum
+	 */
+	private double[] sumRange(final int from, final int to) {
+		final int nChunks = (to - from + CHUNK - 1) / CHUNK;
+		return IntStream.range(0, nChunks).parallel().mapToObj(chunk -> {
+			final double[] partial = new double[nBins];
+			final RandomAccess<FloatType> ra = trans.randomAccess();
+			final int end = Math.min(from + (chunk + 1) * CHUNK, to);
+			for (int i = from + chunk * CHUNK; i < end; i++) {
+				ra.setPosition(sortedPixels[i] % w, X);
+				ra.setPosition(sortedPixels[i] / w, Y);
+				ra.setPosition(0, L);
+				for (int t = 0; t < nBins; t++, ra.fwd(L))
+					partial[t] += ra.get().getRealDouble();
+			}
+			return partial;
+		}).reduce((a, b) -> {
+			add(a, b);
+			return a;
+		}).orElseGet(() -> new double[nBins]);
+	}
+
+	/**
+	 * @param iThresh the intensity threshold
+	 * @return the index of the first pixel in <code>sortedIntensity</code> not below
+	 *         <code>iThresh</code>
+	 */
+	private int lowerBound(final float iThresh) {
+		int lo = 0;
+		int hi = sortedIntensity.length;
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (sortedIntensity[mid] < iThresh)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * @param v the value
+	 * @return the bits of <code>v</code> remapped so that they order as signed ints like the floats
+	 */
+	private static int sortableBits(final float v) {
+		final int bits = Float.floatToIntBits(v);
+		return bits ^ ((bits >> 31) & 0x7fffffff);
+	}
+
+	private static void add(final double[] acc, final double[] v) {
+		for (int t = 0; t < acc.length; t++)
+			acc[t] += v[t];
+	}
+
+	private static void subtract(final double[] acc, final double[] v) {
+		for (int t = 0; t < acc.length; t++)
+			acc[t] -= v[t];
+	}
+}
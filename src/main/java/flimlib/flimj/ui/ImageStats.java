@@ -0,0 +1,173 @@
+package flimlib.flimj.ui;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+/**
+ * The min, max and percentiles of a 2D image, gathered in one parallel pass into a histogram.
+ * Values are bucketed by the upper 16 bits of their IEEE 754 representation (sign, exponent and 7
+ * mantissa bits), so that no range needs to be known beforehand and a percentile is off by at
+ * most 2<sup>-8</sup> of its magnitude. NaN values are ignored.
+ */
+public class ImageStats {
+
+	/** The number of histogram buckets */
+	private static final int N_BUCKETS = 1 << 16;
+
+	/**
+	 * The number of pixels of a pass done by one task at least. A pass is split into at most as
+	 * many tasks as the common pool has workers, each filling its own histogram.
+	 */
+	private static final int MIN_TASK_PIXELS = 1 << 16;
+
+	/** The number of counted values in each bucket (in ascending order of value) */
+	private final long[] histogram;
+
+	private final long count;
+
+	private final float min, max;
+
+	private ImageStats(final long[] histogram, final long count, final float min,
+			final float max) {
+		this.histogram = histogram;
+		this.count = count;
+		this.min = min;
+		this.max = max;
+	}
+
+	/**
+	 * Gathers the statistics of the pixels of <code>img</code>, or only of those whose
+	 * <code>status</code> is 0 (i.e. good fits).
+	 *
+	 * @param img    the 2D image
+	 * @param status the fit status of each pixel, or <code>null</code> to count all pixels
+	 * @return the statistics
+	 */
+	public static ImageStats of(final RandomAccessibleInterval<FloatType> img,
+			final RandomAccessibleInterval<FloatType> status) {
+		final FlatImage flatImg = FlatImage.of(img);
+		final FlatImage flatStatus = status != null ? FlatImage.of(status) : null;
+		final boolean flat = flatImg != null && (status == null || flatStatus != null);
+		final RandomAccessibleInterval<FloatType> zImg = Views.zeroMin(img);
+		final RandomAccessibleInterval<FloatType> zStatus =
+				status != null ? Views.zeroMin(status) : null;
+		final int w = (int) img.dimension(0);
+		final int h = (int) img.dimension(1);
+		// one histogram per task, so no more tasks than the pool has workers
+		final int minRows = Math.max(MIN_TASK_PIXELS / Math.max(w, 1), 1);
+		final int maxTasks =
+				Math.min((h + minRows - 1) / minRows, ForkJoinPool.getCommonPoolParallelism());
+		final int rowsPerTask = maxTasks > 0 ? (h + maxTasks - 1) / maxTasks : 1;
+		final int nTasks = (h + rowsPerTask - 1) / rowsPerTask;
+
+		return IntStream.range(0, nTasks).parallel().mapToObj(task -> {
+			final long[] histogram = new long[N_BUCKETS];
+			long count = 0;
+			float min = Float.POSITIVE_INFINITY;
+			float max = Float.NEGATIVE_INFINITY;
+			final RandomAccess<FloatType> imgRA = flat ? null : zImg.randomAccess();
+			final RandomAccess<FloatType> statusRA =
+					flat || zStatus == null ? null : zStatus.randomAccess();
+			final int yEnd = Math.min((task + 1) * rowsPerTask, h);
+			for (int y = task * rowsPerTask; y < yEnd; y++)
+				for (int x = 0; x < w; x++) {
+					final float v;
+					if (flat) {
+						if (flatStatus != null && flatStatus.get(x, y) != 0)
+							continue;
+						v = flatImg.get(x, y);
+					} else {
+						if (statusRA != null) {
+							statusRA.setPosition(x, 0);
+							statusRA.setPosition(y, 1);
+							if (statusRA.get().get() != 0)
+								continue;
+						}
+						imgRA.setPosition(x, 0);
+						imgRA.setPosition(y, 1);
+						v = imgRA.get().get();
+					}
+					if (Float.isNaN(v))
+						continue;
+					histogram[bucketOf(v)]++;
+					count++;
+					min = Math.min(min, v);
+					max = Math.max(max, v);
+				}
+			return new ImageStats(histogram, count, min, max);
+		}).reduce(ImageStats::merge).orElseGet(
+				() -> new ImageStats(new long[N_BUCKETS], 0, Float.NaN, Float.NaN));
+	}
+
+	/**
+	 * @return the number of counted values
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the smallest counted value, or NaN if none
+	 */
+	public double getMin() {
+		return count > 0 ? min : Double.NaN;
+	}
+
+	/**
+	 * @return the largest counted value, or NaN if none
+	 */
+	public double getMax() {
+		return count > 0 ? max : Double.NaN;
+	}
+
+	/**
+	 * @param p the percentage in [0, 100]
+	 * @return the value below which <code>p</code>% of the counted values fall, or NaN if none
+	 */
+	public double getPercentile(final double p) {
+		if (count == 0)
+			return Double.NaN;
+		final long rank = Math.round(Math.min(Math.max(p, 0), 100) / 100 * (count - 1));
+		long seen = 0;
+		int bucket = 0;
+		while (seen + histogram[bucket] <= rank)
+			seen += histogram[bucket++];
+
+		// the middle of the bucket, kept within the values actually seen
+		final float lo = valueOf(bucket << 16);
+		final float hi = valueOf(bucket << 16 | 0xffff);
+		final double mid = Float.isFinite(lo) && Float.isFinite(hi) ? (lo + (double) hi) / 2 : lo;
+		return Math.min(Math.max(mid, min), max);
+	}
+
+	private static ImageStats merge(final ImageStats a, final ImageStats b) {
+		for (int i = 0; i < N_BUCKETS; i++)
+			a.histogram[i] += b.histogram[i];
+		return new ImageStats(a.histogram, a.count + b.count, Math.min(a.min, b.min),
+				Math.max(a.max, b.max));
+	}
+
+	/**
+	 * @param v the value
+	 * @return the bucket of <code>v</code>, buckets are in the same order as their values
+	 */
+	private static int bucketOf(final float v) {
+		final int bits = Float.floatToIntBits(v);
+		// flip negative values so that the bits order as unsigned ints
+		return ((bits ^ ((bits >> 31) | 0x80000000)) >>> 16);
+	}
+
+	/**
+	 * @param key the order-preserving bits (see {@link #bucketOf})
+	 * @return the value
+	 */
+	private static float valueOf(final int key) {
+		final int bits = key < 0 ? key ^ 0x80000000 : ~key;
+		return Float.intBitsToFloat(bits);
+	}
+}
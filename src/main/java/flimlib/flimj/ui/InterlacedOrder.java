@@ -0,0 +1,68 @@
+package flimlib.flimj.ui;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+/**
+ * Orders the pixels of a dataset in coarse-to-fine passes so that an approximate map of the whole
+ * field is available early: the first pass visits every {@link #STRIDES}[0]-th pixel along X and
+ * Y, and each following pass the remaining pixels on a finer grid. Within a pass, brighter pixels
+ * come first.
+ */
+public class InterlacedOrder {
+
+	/** The grid spacing of each pass */
+	public static final int[] STRIDES = {8, 4, 2, 1};
+
+	private InterlacedOrder() {}
+
+	/**
+	 * @param intensity the intensity image (singleton lifetime axis)
+	 * @param axisOrder the indices of X, Y and lifetime axes
+	 * @return the pixel indices (y * w + x) of each pass
+	 */
+	public static List<int[]> passes(final RandomAccessibleInterval<FloatType> intensity,
+			final int[] axisOrder) {
+		final RandomAccessibleInterval<FloatType> img = Views.zeroMin(intensity);
+		final int X = axisOrder[0];
+		final int Y = axisOrder[1];
+		final int w = (int) img.dimension(X);
+		final int h = (int) img.dimension(Y);
+		final RandomAccess<FloatType> ra = img.randomAccess();
+		ra.setPosition(0, axisOrder[2]);
+
+		final List<int[]> passes = new ArrayList<>();
+		for (int p = 0; p < STRIDES.length; p++) {
+			final int stride = STRIDES[p];
+			final int coarser = p > 0 ? STRIDES[p - 1] : 0;
+			// sort keys: brightness descending in the high word, pixel index in the low word
+			long[] keys = new long[((w + stride - 1) / stride) * ((h + stride - 1) / stride)];
+			int n = 0;
+			for (int y = 0; y < h; y += stride)
+				for (int x = 0; x < w; x += stride) {
+					// visited by a previous pass
+					if (coarser > 0 && x % coarser == 0 && y % coarser == 0)
+						continue;
+					ra.setPosition(x, X);
+					ra.setPosition(y, Y);
+					// the bits of non-negative floats order like the floats themselves
+					final int bits = Float.floatToIntBits(Math.max(ra.get().get(), 0));
+					keys[n++] = ((long) (Integer.MAX_VALUE - bits) << 32) | (y * w + x);
+				}
+			keys = Arrays.copyOf(keys, n);
+			Arrays.sort(keys);
+
+			final int[] pixels = new int[n];
+			for (int i = 0; i < n; i++)
+				pixels[i] = (int) keys[i];
+			passes.add(pixels);
+		}
+		return passes;
+	}
+}
@@ -0,0 +1,301 @@
+package flimlib.flimj.ui;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+import flimlib.flimj.ui.TiledFitter.TileListener;
+
+/**
+ * The parameter and fit status maps of a dataset fit in progress. Tiles are copied in as soon as
+ * they are fitted (from the worker threads), and the regions changed since the last
+ * {@link #drainDirty()} are tracked in blocks of {@link #BLOCK_SIZE} pixels so that the preview
+ * only re-renders those. Pixels not fitted yet have NaN parameters and the status
+ * {@link TiledFitter#RET_NOT_FITTED}, unless approximated by {@link #fillFromGrid(int)}, which
+ * gives them the status {@link #RET_APPROXIMATED}. The display status map is what the preview
+ * masks with: it only differs from the status in that approximated pixels of bad fits keep the
+ * status of the fit they were approximated by, so that they are shown alike.
+ */
+public class LiveFitResults {
+
+	/** The edge length (in pixels) of a block of dirty tracking */
+	public static final int BLOCK_SIZE = TiledFitter.TILE_SIZE;
+
+	/** The status of pixels approximated by their nearest fitted neighbor */
+	public static final int RET_APPROXIMATED = -103;
+
+	/** Indices of the X, Y and lifetime axes */
+	private final int X, Y, L;
+
+	/** Width and height of the dataset */
+	private final int w, h;
+
+	/** The number of blocks along X and Y */
+	private final int blocksX, blocksY;
+
+	private final Img<FloatType> paramMap, status, displayStatus;
+
+	/** The blocks changed since the last {@link #drainDirty()} (row-major) */
+	private final BitSet dirty;
+
+	/**
+	 * @param w         the width of the dataset
+	 * @param h         the height of the dataset
+	 * @param nParam    the number of parameters
+	 * @param axisOrder the indices of X, Y and lifetime axes
+	 */
+	public LiveFitResults(final int w, final int h, final int nParam, final int[] axisOrder) {
+		X = axisOrder[0];
+		Y = axisOrder[1];
+		L = axisOrder[2];
+		this.w = w;
+		this.h = h;
+		blocksX = (w + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		blocksY = (h + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		dirty = new BitSet(blocksX * blocksY);
+
+		final long[] dims = new long[3];
+		dims[X] = w;
+		dims[Y] = h;
+		dims[L] = nParam;
+		final float[] params = new float[w * h * nParam];
+		Arrays.fill(params, Float.NaN);
+		paramMap = ArrayImgs.floats(params, dims);
+
+		dims[L] = 1;
+		final float[] codes = new float[w * h];
+		Arrays.fill(codes, TiledFitter.RET_NOT_FITTED);
+		status = ArrayImgs.floats(codes, dims);
+		displayStatus = ArrayImgs.floats(codes.clone(), dims);
+	}
+
+	/**
+	 * @return the parameter map (updated in place)
+	 */
+	public Img<FloatType> getParamMap() {
+		return paramMap;
+	}
+
+	/**
+	 * @return the fit status map (updated in place)
+	 */
+	public Img<FloatType> getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return the fit status map to mask the preview with (updated in place)
+	 */
+	public Img<FloatType> getDisplayStatus() {
+		return displayStatus;
+	}
+
+	/**
+	 * Makes a listener that copies the tiles of a transient map into these maps.
+	 *
+	 * @param fitted the transient map being fitted
+	 * @param packed the packing if <code>fitted</code> is packed, or <code>null</code> if it has
+	 *               the same layout as the dataset
+	 * @return the listener
+	 */
+	public TileListener listenerFor(final Interval fitted, final PackedTrans packed) {
+		final long[] origin = new long[fitted.numDimensions()];
+		fitted.min(origin);
+		return (tile, results) -> publish(tile, results.paramMap, results.retCodeMap, origin,
+				packed);
+	}
+
+	/**
+	 * Approximates every pixel not fitted yet by the nearest pixel on the grid of
+	 * <code>stride</code>, which must have been fitted. Must not be called while tiles are being
+	 * published.
+	 *
+	 * @param stride the grid spacing
+	 */
+	public void fillFromGrid(final int stride) {
+		IntStream.range(0, h).parallel().forEach(y -> {
+			final RandomAccess<FloatType> paramSrc = paramMap.randomAccess();
+			final RandomAccess<FloatType> paramDst = paramMap.randomAccess();
+			final RandomAccess<FloatType> statusSrc = status.randomAccess();
+			final RandomAccess<FloatType> statusDst = status.randomAccess();
+			final RandomAccess<FloatType> displayDst = displayStatus.randomAccess();
+			final BitSet touched = new BitSet(blocksX * blocksY);
+			final int gy = nearestOnGrid(y, stride, h);
+			for (int x = 0; x < w; x++) {
+				statusDst.setPosition(x, X);
+				statusDst.setPosition(y, Y);
+				statusDst.setPosition(0, L);
+				final float code = statusDst.get().get();
+				if (code != TiledFitter.RET_NOT_FITTED && code != RET_APPROXIMATED)
+					continue;
+				final int gx = nearestOnGrid(x, stride, w);
+				paramSrc.setPosition(gx, X);
+				paramSrc.setPosition(gy, Y);
+				statusSrc.setPosition(gx, X);
+				statusSrc.setPosition(gy, Y);
+				statusSrc.setPosition(0, L);
+				copyPixel(x, y, paramSrc, statusSrc, paramDst, statusDst, displayDst,
+						(int) paramMap.dimension(L), touched);
+				statusDst.get().set(RET_APPROXIMATED);
+				if (statusSrc.get().get() == 0)
+					displayDst.get().set(RET_APPROXIMATED);
+			}
+			synchronized (dirty) {
+				dirty.or(touched);
+			}
+		});
+	}
+
+	/**
+	 * Resets every approximated pixel to not fitted, e.g. when the grids of the finer passes will
+	 * not be fitted. Must not be called while tiles are being published.
+	 */
+	public void clearApproximated() {
+		final int nParam = (int) paramMap.dimension(L);
+		IntStream.range(0, h).parallel().forEach(y -> {
+			final RandomAccess<FloatType> paramDst = paramMap.randomAccess();
+			final RandomAccess<FloatType> statusDst = status.randomAccess();
+			final RandomAccess<FloatType> displayDst = displayStatus.randomAccess();
+			final BitSet touched = new BitSet(blocksX * blocksY);
+			for (int x = 0; x < w; x++) {
+				statusDst.setPosition(x, X);
+				statusDst.setPosition(y, Y);
+				statusDst.setPosition(0, L);
+				if (statusDst.get().get() != RET_APPROXIMATED)
+					continue;
+				statusDst.get().set(TiledFitter.RET_NOT_FITTED);
+				displayDst.setPosition(statusDst);
+				displayDst.get().set(TiledFitter.RET_NOT_FITTED);
+				paramDst.setPosition(x, X);
+				paramDst.setPosition(y, Y);
+				paramDst.setPosition(0, L);
+				for (int l = 0; l < nParam; l++, paramDst.fwd(L))
+					paramDst.get().set(Float.NaN);
+				touched.set(y / BLOCK_SIZE * blocksX + x / BLOCK_SIZE);
+			}
+			synchronized (dirty) {
+				dirty.or(touched);
+			}
+		});
+	}
+
+	/**
+	 * Takes the regions changed since the last call.
+	 *
+	 * @return the changed regions in (x, y) coordinates of the preview images
+	 */
+	public List<Interval> drainDirty() {
+		final BitSet drained;
+		synchronized (dirty) {
+			drained = (BitSet) dirty.clone();
+			dirty.clear();
+		}
+		final List<Interval> regions = new ArrayList<>();
+		for (int b = drained.nextSetBit(0); b >= 0; b = drained.nextSetBit(b + 1)) {
+			final long x0 = (long) (b % blocksX) * BLOCK_SIZE;
+			final long y0 = (long) (b / blocksX) * BLOCK_SIZE;
+			regions.add(new FinalInterval(new long[] {x0, y0}, new long[] {
+					Math.min(x0 + BLOCK_SIZE, w) - 1, Math.min(y0 + BLOCK_SIZE, h) - 1}));
+		}
+		return regions;
+	}
+
+	/**
+	 * @param v      the coordinate
+	 * @param stride the grid spacing
+	 * @param size   the size of the axis
+	 * @return the coordinate of the nearest grid point
+	 */
+	private static int nearestOnGrid(final int v, final int stride, final int size) {
+		return Math.min(Math.round((float) v / stride), (size - 1) / stride) * stride;
+	}
+
+	/**
+	 * Copies the maps of a fitted tile to the pixels it covers.
+	 *
+	 * @param tile       the tile interval in the transient map being fitted
+	 * @param tileParams the parameter map of the tile
+	 * @param tileStatus the return code map of the tile
+	 * @param origin     the min of the transient map being fitted
+	 * @param packed     the packing of the transient map being fitted, may be <code>null</code>
+	 */
+	private <T extends RealType<T>> void publish(final Interval tile,
+			final RandomAccessibleInterval<FloatType> tileParams,
+			final RandomAccessibleInterval<T> tileStatus, final long[] origin,
+			final PackedTrans packed) {
+		final RandomAccess<FloatType> paramSrc =
+				tileParams != null ? Views.zeroMin(tileParams).randomAccess() : null;
+		final RandomAccess<T> statusSrc =
+				tileStatus != null ? Views.zeroMin(tileStatus).randomAccess() : null;
+		final RandomAccess<FloatType> paramDst = paramMap.randomAccess();
+		final RandomAccess<FloatType> statusDst = status.randomAccess();
+		final RandomAccess<FloatType> displayDst = displayStatus.randomAccess();
+		final int depth = tileParams != null
+				? (int) Math.min(tileParams.dimension(L), paramMap.dimension(L))
+				: 0;
+		final BitSet touched = new BitSet(blocksX * blocksY);
+
+		final int tileW = (int) tile.dimension(X);
+		final int tileH = (int) tile.dimension(Y);
+		final int x0 = (int) (tile.min(X) - origin[X]);
+		final int y0 = (int) (tile.min(Y) - origin[Y]);
+		for (int ty = 0; ty < tileH; ty++)
+			for (int tx = 0; tx < tileW; tx++) {
+				if (paramSrc != null) {
+					paramSrc.setPosition(tx, X);
+					paramSrc.setPosition(ty, Y);
+				}
+				if (statusSrc != null) {
+					statusSrc.setPosition(tx, X);
+					statusSrc.setPosition(ty, Y);
+					statusSrc.setPosition(0, L);
+				}
+				if (packed == null)
+					copyPixel(x0 + tx, y0 + ty, paramSrc, statusSrc, paramDst, statusDst,
+							displayDst, depth, touched);
+				else
+					// packed maps are a single row
+					packed.forEachPixel(x0 + tx, i -> copyPixel(i % w, i / w, paramSrc, statusSrc,
+							paramDst, statusDst, displayDst, depth, touched));
+			}
+
+		synchronized (dirty) {
+			dirty.or(touched);
+		}
+	}
+
+	private <T extends RealType<T>> void copyPixel(final int x, final int y,
+			final RandomAccess<FloatType> paramSrc, final RandomAccess<T> statusSrc,
+			final RandomAccess<FloatType> paramDst, final RandomAccess<FloatType> statusDst,
+			final RandomAccess<FloatType> displayDst, final int depth, final BitSet touched) {
+		if (paramSrc != null) {
+			paramSrc.setPosition(0, L);
+			paramDst.setPosition(x, X);
+			paramDst.setPosition(y, Y);
+			paramDst.setPosition(0, L);
+			for (int l = 0; l < depth; l++, paramSrc.fwd(L), paramDst.fwd(L))
+				paramDst.get().set(paramSrc.get());
+		}
+		if (statusSrc != null) {
+			statusDst.setPosition(x, X);
+			statusDst.setPosition(y, Y);
+			statusDst.setPosition(0, L);
+			statusDst.get().setReal(statusSrc.get().getRealFloat());
+			displayDst.setPosition(statusDst);
+			displayDst.get().set(statusDst.get());
+		}
+		touched.set(y / BLOCK_SIZE * blocksX + x / BLOCK_SIZE);
+	}
+}
@@ -0,0 +1,60 @@
+package flimlib.flimj.ui;
+
+import net.imglib2.display.ColorTable;
+import net.imglib2.util.Binning;
+
+/**
+ * The colors of the bins of a {@link ColorTable} of up to 256 entries. Values quantized with
+ * {@link #bin} can be stored as 8-bit indices and recolored with a new LUT by a plain array
+ * lookup, and <code>colors[bin(lut.getLength(), min, max, v)]</code> is exactly
+ * <code>lut.lookupARGB(min, max, v)</code>, i.e. what a
+ * {@link net.imglib2.converter.RealLUTConverter} outputs.
+ */
+public final class LutPalette {
+
+	/** The most bins an 8-bit index can address */
+	public static final int MAX_BINS = 256;
+
+	private final int[] colors = new int[MAX_BINS];
+
+	/** The LUT {@link #colors} were built from */
+	private ColorTable lut;
+
+	/**
+	 * @param lut the LUT
+	 * @return <code>true</code> if the bins of <code>lut</code> fit in 8-bit indices
+	 */
+	public static boolean fits(final ColorTable lut) {
+		return lut.getLength() <= MAX_BINS;
+	}
+
+	/**
+	 * The bin of a value, computed the same way as {@link ColorTable#lookupARGB}: values outside
+	 * [min, max] are clamped to the first or last bin, and NaN goes to the first.
+	 *
+	 * @param bins  the number of bins, i.e. the length of the LUT
+	 * @param min   the value mapped to the start of the first bin
+	 * @param max   the value mapped to the end of the last bin
+	 * @param value the value
+	 * @return the bin of <code>value</code>
+	 */
+	public static int bin(final int bins, final double min, final double max, final double value) {
+		return Binning.valueToBin(bins, min, max, value);
+	}
+
+	/**
+	 * @param lut the LUT, must {@link #fits fit}
+	 * @return the color of each bin of <code>lut</code>, only the first
+	 *         <code>lut.getLength()</code> entries are meaningful
+	 */
+	public synchronized int[] of(final ColorTable lut) {
+		if (lut != this.lut) {
+			// the middle of bin i when the range is split into unit-wide bins
+			final int bins = lut.getLength();
+			for (int i = 0; i < bins; i++)
+				colors[i] = lut.lookupARGB(0, bins, i + 0.5);
+			this.lut = lut;
+		}
+		return colors;
+	}
+}
@@ -0,0 +1,27 @@
+package flimlib.flimj.ui;
+
+import java.util.function.IntConsumer;
+
+import net.imglib2.img.Img;
+import net.imglib2.type.numeric.real.FloatType;
+
+/**
+ * A transient map whose entries are packed into a single row for fitting, each entry standing for
+ * one or more pixels of the dataset (e.g. a subset of the pixels or the distinct decays).
+ */
+public interface PackedTrans {
+
+	/**
+	 * @return the packed transient map (n x 1 spatially)
+	 */
+	Img<FloatType> getTrans();
+
+	/**
+	 * Calls <code>action</code> with the index (y * w + x) of every dataset pixel the
+	 * <code>i</code>-th entry stands for.
+	 *
+	 * @param i      the index of the entry
+	 * @param action the action
+	 */
+	void forEachPixel(int i, IntConsumer action);
+}
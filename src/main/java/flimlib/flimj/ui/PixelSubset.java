@@ -0,0 +1,79 @@
+package flimlib.flimj.ui;
+
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+/**
+ * A subset of the pixels of a transient map packed into a single row in a given order.
+ */
+public class PixelSubset implements PackedTrans {
+
+	/** The pixel indices (y * w + x) in packing order */
+	private final int[] pixels;
+
+	private final Img<FloatType> trans;
+
+	/**
+	 * @param transMap  the transient map
+	 * @param axisOrder the indices of X, Y and lifetime axes
+	 * @param pixels    the pixel indices (y * w + x) in packing order
+	 */
+	public PixelSubset(final RandomAccessibleInterval<FloatType> transMap, final int[] axisOrder,
+			final int[] pixels) {
+		this.pixels = pixels;
+		this.trans = pack(transMap, axisOrder, pixels, pixels.length);
+	}
+
+	@Override
+	public Img<FloatType> getTrans() {
+		return trans;
+	}
+
+	@Override
+	public void forEachPixel(final int i, final IntConsumer action) {
+		action.accept(pixels[i]);
+	}
+
+	/**
+	 * Copies the transients of the first <code>n</code> pixels in <code>pixels</code> into a
+	 * n x 1 map.
+	 *
+	 * @param transMap  the transient map
+	 * @param axisOrder the indices of X, Y and lifetime axes
+	 * @param pixels    the pixel indices (y * w + x)
+	 * @param n         the number of pixels to pack
+	 * @return the packed map
+	 */
+	static Img<FloatType> pack(final RandomAccessibleInterval<FloatType> transMap,
+			final int[] axisOrder, final int[] pixels, final int n) {
+		final RandomAccessibleInterval<FloatType> src = Views.zeroMin(transMap);
+		final int X = axisOrder[0];
+		final int Y = axisOrder[1];
+		final int L = axisOrder[2];
+		final int w = (int) src.dimension(X);
+		final int nBins = (int) src.dimension(L);
+
+		final Img<FloatType> packed =
+				ArrayImgs.floats(FitProcessor.swapInLtAxis(new long[] {n, 1, nBins}, L));
+		IntStream.range(0, n).parallel().forEach(i -> {
+			final RandomAccess<FloatType> srcRA = src.randomAccess();
+			final RandomAccess<FloatType> dstRA = packed.randomAccess();
+			srcRA.setPosition(pixels[i] % w, X);
+			srcRA.setPosition(pixels[i] / w, Y);
+			srcRA.setPosition(0, L);
+			dstRA.setPosition(i, X);
+			dstRA.setPosition(0, Y);
+			dstRA.setPosition(0, L);
+			for (int t = 0; t < nBins; t++, srcRA.fwd(L), dstRA.fwd(L))
+				dstRA.get().set(srcRA.get());
+		});
+		return packed;
+	}
+}
@@ -0,0 +1,434 @@
+package flimlib.flimj.ui;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.geometry.Bounds;
+import javafx.scene.Node;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.chart.ValueAxis;
+import javafx.scene.chart.XYChart;
+import javafx.scene.paint.Color;
+
+/**
+ * A canvas laid over the plot area of an {@link XYChart} that draws series straight from
+ * <code>float[]</code> buffers. The chart itself holds no data and only provides the axes and grid,
+ * so that updating a series does not create scene graph nodes. The y axis is auto ranged for the
+ * visible part of the series. Series much longer than the plot is wide are decimated to the min and
+ * max value of each pixel column.
+ */
+public class PlotCanvas extends Canvas {
+
+	/** Modena's CHART_COLOR_1, CHART_COLOR_2 and CHART_COLOR_3 */
+	public static final Color CHART_COLOR_1 = Color.web("#f3622d"),
+			CHART_COLOR_2 = Color.web("#fba71b"), CHART_COLOR_3 = Color.web("#57b757");
+
+	/** The diameter of a dot and the width of its ring */
+	private static final double DOT_SIZE = 7, DOT_RING = 1.5;
+
+	/**
+	 * A series of values at evenly spaced x positions. Only the values between the head and tail
+	 * crops are shown.
+	 */
+	public static class Trace {
+
+		private final Color color;
+
+		/** The line width, or 0 to draw dots instead */
+		private final double lineWidth;
+
+		private float[] values = new float[0];
+
+		private int length;
+
+		private double x0, xInc;
+
+		/** The number of values hidden at the start and the end */
+		private int head, tail;
+
+		/** Bumped on {@link #resize} to invalidate the caches below */
+		private int version;
+
+		/** The indices of the values picked by {@link #decimate} */
+		private int[] picked = new int[0];
+
+		private int nPicked;
+
+		/** The arguments and version that {@link #picked} is valid for */
+		private int pickedVersion = -1, pickedFrom, pickedTo, pickedBuckets;
+
+		private boolean pickedPositiveOnly;
+
+		/** The extent of the visible values and the version and range it is valid for */
+		private double extentMin, extentMinPositive, extentMax;
+
+		private int extentVersion = -1, extentFrom, extentTo;
+
+		/**
+		 * @param color     the color of the line or dots
+		 * @param lineWidth the line width, or 0 to draw dots
+		 */
+		public Trace(Color color, double lineWidth) {
+			this.color = color;
+			this.lineWidth = lineWidth;
+		}
+
+		/**
+		 * Resizes the series. The returned buffer is reused across calls and its content is
+		 * undefined; the caller is expected to fill in the first <code>length</code> values. Must
+		 * be called (even with an unchanged length) before the values are changed. Crops are
+		 * retained.
+		 *
+		 * @param length the number of values
+		 * @return the buffer of values
+		 */
+		public float[] resize(int length) {
+			if (values.length < length) {
+				values = new float[length];
+			}
+			this.length = length;
+			version++;
+			return values;
+		}
+
+		/**
+		 * @param x0   the x position of the first value
+		 * @param xInc the x increment between values
+		 */
+		public void setX(double x0, double xInc) {
+			this.x0 = x0;
+			this.xInc = xInc;
+		}
+
+		/**
+		 * @param head the number of values hidden at the start
+		 * @param tail the number of values hidden at the end
+		 */
+		public void crop(int head, int tail) {
+			this.head = Math.max(head, 0);
+			this.tail = Math.max(tail, 0);
+		}
+
+		public int getLength() {
+			return length;
+		}
+
+		public int getHead() {
+			return head;
+		}
+
+		public int getTail() {
+			return tail;
+		}
+
+		/**
+		 * @return the index of the first visible value
+		 */
+		int from() {
+			return Math.min(head, length);
+		}
+
+		/**
+		 * @return the index after the last visible value
+		 */
+		int to() {
+			return Math.max(from(), length - tail);
+		}
+
+		/**
+		 * Picks the values to draw from [from, to). If there are more than two values per bucket
+		 * (i.e. <code>to - from</code> evenly divided into <code>nBuckets</code>), only the min and
+		 * the max value of each bucket are picked, in their original order. A bucket without valid
+		 * values is represented by its first value so that lines are still broken there. The picks
+		 * are recomputed only when the values or the arguments change.
+		 *
+		 * @param from         the first index
+		 * @param to           the index after the last
+		 * @param nBuckets     the number of buckets (e.g. pixel columns)
+		 * @param positiveOnly ignore non-positive values (in log scale)
+		 * @return the number of values picked, see {@link #picked}
+		 */
+		int decimate(int from, int to, int nBuckets, boolean positiveOnly) {
+			if (pickedVersion == version && pickedFrom == from && pickedTo == to
+					&& pickedBuckets == nBuckets && pickedPositiveOnly == positiveOnly) {
+				return nPicked;
+			}
+			pickedVersion = version;
+			pickedFrom = from;
+			pickedTo = to;
+			pickedBuckets = nBuckets;
+			pickedPositiveOnly = positiveOnly;
+
+			final int n = to - from;
+			final boolean all = n <= nBuckets * 2;
+			final int capacity = all ? n : nBuckets * 2;
+			if (picked.length < capacity) {
+				picked = new int[capacity];
+			}
+			nPicked = 0;
+			if (all) {
+				for (int i = from; i < to; i++) {
+					picked[nPicked++] = i;
+				}
+				return nPicked;
+			}
+
+			int start = from;
+			for (int b = 0; b < nBuckets; b++) {
+				final int end = from + (int) ((long) n * (b + 1) / nBuckets);
+				int minIdx = -1, maxIdx = -1;
+				for (int i = start; i < end; i++) {
+					final float value = values[i];
+					if (!Float.isFinite(value) || positiveOnly && value <= 0) {
+						continue;
+					}
+					if (minIdx < 0 || value < values[minIdx]) {
+						minIdx = i;
+					}
+					if (maxIdx < 0 || value > values[maxIdx]) {
+						maxIdx = i;
+					}
+				}
+				if (minIdx < 0) {
+					picked[nPicked++] = start;
+				} else {
+					// keep the order along x
+					picked[nPicked++] = Math.min(minIdx, maxIdx);
+					if (minIdx != maxIdx) {
+						picked[nPicked++] = Math.max(minIdx, maxIdx);
+					}
+				}
+				start = end;
+			}
+			return nPicked;
+		}
+
+		/**
+		 * Updates the extent of the finite values in [from, to) unless already known.
+		 */
+		void updateExtent(int from, int to) {
+			if (extentVersion == version && extentFrom == from && extentTo == to) {
+				return;
+			}
+			extentVersion = version;
+			extentFrom = from;
+			extentTo = to;
+			extentMin = extentMinPositive = Double.POSITIVE_INFINITY;
+			extentMax = Double.NEGATIVE_INFINITY;
+			for (int i = from; i < to; i++) {
+				final float value = values[i];
+				if (!Float.isFinite(value)) {
+					continue;
+				}
+				extentMin = Math.min(extentMin, value);
+				extentMax = Math.max(extentMax, value);
+				if (value > 0) {
+					extentMinPositive = Math.min(extentMinPositive, value);
+				}
+			}
+		}
+	}
+
+	private final List<Trace> traces = new ArrayList<>();
+
+	private final Runnable redrawTask = this::redraw;
+
+	private XYChart<Number, Number> chart;
+
+	private ValueAxis<Number> xAxis;
+
+	private VariableScaleAxis yAxis;
+
+	/** The plot background of the chart that this canvas covers */
+	private Node plotArea;
+
+	/** Is a redraw scheduled? */
+	private boolean redrawPending;
+
+	/** Reused polyline buffers */
+	private double[] xs = new double[0], ys = new double[0];
+
+	public PlotCanvas() {
+		setMouseTransparent(true);
+		// placed by align(), and must not keep the parent from shrinking
+		setManaged(false);
+		widthProperty().addListener(obs -> invalidate());
+		heightProperty().addListener(obs -> invalidate());
+	}
+
+	/**
+	 * Places this canvas over the plot area of <code>chart</code> and draws with its axes. This
+	 * canvas must be a sibling of the chart, added after it.
+	 *
+	 * @param chart the chart, whose y axis is a {@link VariableScaleAxis}
+	 */
+	@SuppressWarnings("unchecked")
+	public void attach(XYChart<Number, Number> chart) {
+		if (!(chart.getXAxis() instanceof ValueAxis)
+				|| !(chart.getYAxis() instanceof VariableScaleAxis)) {
+			throw new IllegalArgumentException("Unsupported chart axes");
+		}
+		this.chart = chart;
+		xAxis = (ValueAxis<Number>) chart.getXAxis();
+		yAxis = (VariableScaleAxis) chart.getYAxis();
+		plotArea = chart.lookup(".chart-plot-background");
+
+		final InvalidationListener alignListener = obs -> align();
+		plotArea.boundsInParentProperty().addListener(alignListener);
+		chart.boundsInParentProperty().addListener(alignListener);
+		align();
+
+		final InvalidationListener axisListener = obs -> invalidate();
+		xAxis.scaleProperty().addListener(axisListener);
+		xAxis.lowerBoundProperty().addListener(axisListener);
+		yAxis.scaleProperty().addListener(axisListener);
+		yAxis.lowerBoundProperty().addListener(axisListener);
+		yAxis.logScaleProperty().addListener(axisListener);
+	}
+
+	/**
+	 * Adds a series to draw. Series are drawn in the order they are added.
+	 *
+	 * @param trace the series
+	 */
+	public void addTrace(Trace trace) {
+		traces.add(trace);
+		invalidate();
+	}
+
+	/**
+	 * Schedules a redraw (e.g. after a series is changed). Redraws requested before the scheduled
+	 * one happens are merged.
+	 */
+	public void invalidate() {
+		if (!redrawPending) {
+			redrawPending = true;
+			Platform.runLater(redrawTask);
+		}
+	}
+
+	/**
+	 * Moves and resizes the canvas to cover the plot area.
+	 */
+	private void align() {
+		if (getParent() == null) {
+			return;
+		}
+		final Bounds bounds =
+				getParent().sceneToLocal(plotArea.localToScene(plotArea.getLayoutBounds()));
+		if (bounds == null) {
+			return;
+		}
+		setLayoutX(bounds.getMinX());
+		setLayoutY(bounds.getMinY());
+		setWidth(bounds.getWidth());
+		setHeight(bounds.getHeight());
+	}
+
+	/**
+	 * Ranges the y axis and draws the visible part of each series.
+	 */
+	private void redraw() {
+		redrawPending = false;
+		if (chart == null) {
+			return;
+		}
+		updateYExtent();
+
+		final GraphicsContext gc = getGraphicsContext2D();
+		gc.clearRect(0, 0, getWidth(), getHeight());
+
+		// x positions are linear in the value
+		final double xOffset = xAxis.getDisplayPosition(0);
+		final double xScale = xAxis.getDisplayPosition(1) - xOffset;
+		if (!Double.isFinite(xOffset) || !Double.isFinite(xScale)) {
+			return;
+		}
+		for (int t = 0; t < traces.size(); t++) {
+			final Trace trace = traces.get(t);
+			final int from = trace.from();
+			final int to = trace.to();
+			// about 2 values per pixel column spanned
+			final double span = Math.abs((to - from - 1) * trace.xInc * xScale);
+			final int nBuckets = (int) Math.ceil(Math.min(span, getWidth()));
+			final int n = trace.decimate(from, to, Math.max(nBuckets, 1), yAxis.getLogScale());
+			if (trace.lineWidth > 0) {
+				drawLine(gc, trace, n, xOffset, xScale);
+			} else {
+				drawDots(gc, trace, n, xOffset, xScale);
+			}
+		}
+	}
+
+	/**
+	 * Draws the picked values of a series as polylines, broken at values that cannot be placed
+	 * (e.g. non-positive values in log scale).
+	 */
+	private void drawLine(GraphicsContext gc, Trace trace, int nPicked, double xOffset,
+			double xScale) {
+		if (xs.length < nPicked) {
+			xs = new double[nPicked];
+			ys = new double[nPicked];
+		}
+		gc.setStroke(trace.color);
+		gc.setLineWidth(trace.lineWidth);
+		int n = 0;
+		for (int k = 0; k < nPicked; k++) {
+			final int i = trace.picked[k];
+			final double y = yAxis.getDisplayPosition(trace.values[i]);
+			if (!Double.isFinite(y)) {
+				if (n > 1) {
+					gc.strokePolyline(xs, ys, n);
+				}
+				n = 0;
+				continue;
+			}
+			xs[n] = xOffset + (trace.x0 + i * trace.xInc) * xScale;
+			ys[n++] = y;
+		}
+		if (n > 1) {
+			gc.strokePolyline(xs, ys, n);
+		}
+	}
+
+	/**
+	 * Draws the picked values of a series as ringed dots.
+	 */
+	private void drawDots(GraphicsContext gc, Trace trace, int nPicked, double xOffset,
+			double xScale) {
+		final double r = DOT_SIZE / 2;
+		final double innerD = DOT_SIZE - DOT_RING * 2;
+		for (int k = 0; k < nPicked; k++) {
+			final int i = trace.picked[k];
+			final double y = yAxis.getDisplayPosition(trace.values[i]);
+			if (!Double.isFinite(y)) {
+				continue;
+			}
+			final double x = xOffset + (trace.x0 + i * trace.xInc) * xScale;
+			gc.setFill(trace.color);
+			gc.fillOval(x - r, y - r, DOT_SIZE, DOT_SIZE);
+			gc.setFill(Color.WHITE);
+			gc.fillOval(x - r + DOT_RING, y - r + DOT_RING, innerD, innerD);
+		}
+	}
+
+	/**
+	 * Sets the extent of the visible values as the data extent of the y axis.
+	 */
+	private void updateYExtent() {
+		double min = Double.POSITIVE_INFINITY;
+		double minPositive = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for (int t = 0; t < traces.size(); t++) {
+			final Trace trace = traces.get(t);
+			trace.updateExtent(trace.from(), trace.to());
+			min = Math.min(min, trace.extentMin);
+			minPositive = Math.min(minPositive, trace.extentMinPositive);
+			max = Math.max(max, trace.extentMax);
+		}
+		yAxis.setDataExtent(min, minPositive, max);
+	}
+}
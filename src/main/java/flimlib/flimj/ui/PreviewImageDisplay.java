@@ -1,28 +1,48 @@
 package flimlib.flimj.ui;
 
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.DoublePredicate;
+import java.util.stream.IntStream;
+
 import javafx.application.Platform;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.value.ChangeListener;
-import javafx.embed.swing.SwingFXUtils;
 import javafx.geometry.Bounds;
 import javafx.scene.Group;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
-import javafx.scene.image.PixelWriter;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.image.WritableImage;
 import javafx.scene.layout.Pane;
 import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.converter.Converters;
 import net.imglib2.converter.RealLUTConverter;
+import net.imglib2.display.ColorTable;
 import net.imglib2.display.screenimage.awt.ARGBScreenImage;
 import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
 
 /**
- * Manages a clickable image display in the Preview pannel.
+ * Manages a clickable image display in the Preview pannel. The image can be zoomed (by scrolling)
+ * and panned (by dragging). Large images are shown through a pyramid of downsampled tiles that
+ * are built on demand for the visible part only. Only the levels above 0 are tiled and evicted:
+ * level 0 stays a full-resolution image, along with its 8-bit color indices and the colors of
+ * the brightness image of a composite, i.e. up to 9 bytes per source pixel are kept while an
+ * image is shown.
  */
 public class PreviewImageDisplay {
 
@@ -37,7 +57,8 @@ public class PreviewImageDisplay {
 		 * Recolors the rendered pixel given a pointer to the source float value and the LUT
 		 * converted color. The value and color can be retrived directly from
 		 * <code>srcRA.get()</code> and <code>lutedRA.get()</code>. The implementation may refer to
-		 * the location through e.g. <code>srcRA.getPosition()</code>.
+		 * the location through e.g. <code>srcRA.getPosition()</code>. Called from the render
+		 * thread of the display.
 		 * 
 		 * @param srcRA   the {@link RandomAccess} pointing at the value being converted
 		 * @param lutedRA the {@link RandomAccess} pointing at the converted color
@@ -46,6 +67,334 @@ public class PreviewImageDisplay {
 		public ARGBType annotate(RandomAccess<FloatType> srcRA, RandomAccess<ARGBType> lutedRA);
 	}
 
+	/**
+	 * The common annotations of a preview image: painting the pixels selected by a mask in a solid
+	 * color, then multiplying by the LUT-converted color of a brightness image, whose pixels below
+	 * a threshold may be painted in a solid color of their own. Unlike an
+	 * arbitrary {@link ImageAnnotator}, these are rendered straight from the arrays behind the
+	 * images when possible.
+	 */
+	public static class Annotation {
+
+		/** MULTIPLY[a << 8 | b] = (int) (a / 255.0 * b) for 8-bit channels a and b */
+		private static final byte[] MULTIPLY = new byte[256 * 256];
+
+		static {
+			for (int a = 0; a < 256; a++)
+				for (int b = 0; b < 256; b++)
+					MULTIPLY[a << 8 | b] = (byte) (int) (a / 255.0 * b);
+		}
+
+		private RandomAccessibleInterval<FloatType> mask, brightness;
+
+		private DoublePredicate maskTest;
+
+		private int maskColor;
+
+		private RealLUTConverter<FloatType> brightnessConverter;
+
+		/** Brightness values below this are painted in <code>belowColor</code> */
+		private float brightnessThresh = Float.NEGATIVE_INFINITY;
+
+		private int belowColor;
+
+		/**
+		 * @param mask  the mask image, same size as the annotated image
+		 * @param test  selects the pixels to paint given their mask value
+		 * @param color the color to paint
+		 * @return this annotation
+		 */
+		public Annotation setMask(final RandomAccessibleInterval<FloatType> mask,
+				final DoublePredicate test, final ARGBType color) {
+			this.mask = mask;
+			this.maskTest = test;
+			this.maskColor = color.get();
+			return this;
+		}
+
+		/**
+		 * @param brightness the brightness image, same size as the annotated image
+		 * @param converter  the LUT converter of the brightness image
+		 * @return this annotation
+		 */
+		public Annotation setComposite(final RandomAccessibleInterval<FloatType> brightness,
+				final RealLUTConverter<FloatType> converter) {
+			this.brightness = brightness;
+			this.brightnessConverter = converter;
+			this.brightnessThresh = Float.NEGATIVE_INFINITY;
+			return this;
+		}
+
+		/**
+		 * Same as {@link #setComposite(RandomAccessibleInterval, RealLUTConverter)}, but
+		 * brightness values below <code>thresh</code> multiply by <code>belowColor</code>
+		 * instead, the way the annotated brightness image looks on its own.
+		 *
+		 * @param brightness the brightness image, same size as the annotated image
+		 * @param converter  the LUT converter of the brightness image
+		 * @param thresh     the brightness threshold
+		 * @param belowColor the color of brightness values below <code>thresh</code>
+		 * @return this annotation
+		 */
+		public Annotation setComposite(final RandomAccessibleInterval<FloatType> brightness,
+				final RealLUTConverter<FloatType> converter, final float thresh,
+				final ARGBType belowColor) {
+			setComposite(brightness, converter);
+			this.brightnessThresh = thresh;
+			this.belowColor = belowColor.get();
+			return this;
+		}
+
+		/**
+		 * @param value the brightness value
+		 * @param lut   the LUT of the brightness converter
+		 * @param min   the min of the brightness converter
+		 * @param max   the max of the brightness converter
+		 * @return the color <code>value</code> multiplies by
+		 */
+		private int brightnessColor(final double value, final ColorTable lut, final double min,
+				final double max) {
+			return value < brightnessThresh ? belowColor : lut.lookupARGB(min, max, value);
+		}
+
+		/**
+		 * @return a copy that is not affected by later changes to this annotation or its
+		 *         brightness converter
+		 */
+		private Annotation snapshot() {
+			final Annotation copy = new Annotation();
+			copy.mask = mask;
+			copy.maskTest = maskTest;
+			copy.maskColor = maskColor;
+			copy.brightness = brightness;
+			copy.brightnessConverter =
+					brightnessConverter != null ? copyOf(brightnessConverter) : null;
+			copy.brightnessThresh = brightnessThresh;
+			copy.belowColor = belowColor;
+			return copy;
+		}
+
+		/**
+		 * @return the equivalent per-pixel annotator for images not backed by arrays
+		 */
+		private ImageAnnotator toAnnotator() {
+			final RandomAccess<FloatType> maskRA = mask != null ? mask.randomAccess() : null;
+			final RandomAccess<FloatType> brightnessRA =
+					brightness != null ? brightness.randomAccess() : null;
+			final ColorTable brightnessLut =
+					brightness != null ? brightnessConverter.getLUT() : null;
+			final double brightnessMin = brightness != null ? brightnessConverter.getMin() : 0;
+			final double brightnessMax = brightness != null ? brightnessConverter.getMax() : 0;
+			final ARGBType output = new ARGBType();
+			return (srcRA, lutedRA) -> {
+				int argb = lutedRA.get().get();
+				if (maskRA != null
+						&& maskTest.test(maskRA.setPositionAndGet(srcRA).getRealDouble()))
+					argb = maskColor;
+				if (brightnessRA != null)
+					argb = multiply(argb,
+							brightnessColor(brightnessRA.setPositionAndGet(srcRA).getRealDouble(),
+									brightnessLut, brightnessMin, brightnessMax));
+				output.set(argb);
+				return output;
+			};
+		}
+
+		/**
+		 * @param h the color
+		 * @param l the brightness color
+		 * @return the channel-wise product of the two colors
+		 */
+		private static int multiply(final int h, final int l) {
+			return multiplyChannel(h, l, 24) | multiplyChannel(h, l, 16)
+					| multiplyChannel(h, l, 8) | multiplyChannel(h, l, 0);
+		}
+
+		private static int multiplyChannel(final int h, final int l, final int shift) {
+			return (MULTIPLY[(h >>> shift & 0xff) << 8 | (l >>> shift & 0xff)] & 0xff) << shift;
+		}
+	}
+
+	/**
+	 * What an image was rendered from: the images (by the arrays behind them if possible), the
+	 * state of the converters and a caller-provided version of everything else (e.g. the values of
+	 * the images and the threshold of a mask test). Rendering the same fingerprint again would
+	 * produce the same pixels.
+	 */
+	private static final class Fingerprint {
+
+		private final Object src, mask, brightness, version;
+
+		private final ColorTable lut, brightnessLut;
+
+		private final double min, max, brightnessMin, brightnessMax;
+
+		private final float brightnessThresh;
+
+		private final int maskColor, belowColor;
+
+		private Fingerprint(final RandomAccessibleInterval<FloatType> src,
+				final RealLUTConverter<FloatType> converter, final Annotation annotation,
+				final Object version) {
+			this.src = identityOf(src);
+			this.version = version;
+			lut = converter.getLUT();
+			min = converter.getMin();
+			max = converter.getMax();
+			final RealLUTConverter<FloatType> brightnessConv =
+					annotation != null ? annotation.brightnessConverter : null;
+			mask = annotation != null ? identityOf(annotation.mask) : null;
+			maskColor = annotation != null ? annotation.maskColor : 0;
+			brightness = annotation != null ? identityOf(annotation.brightness) : null;
+			brightnessLut = brightnessConv != null ? brightnessConv.getLUT() : null;
+			brightnessMin = brightnessConv != null ? brightnessConv.getMin() : 0;
+			brightnessMax = brightnessConv != null ? brightnessConv.getMax() : 0;
+			brightnessThresh =
+					annotation != null ? annotation.brightnessThresh : Float.NEGATIVE_INFINITY;
+			belowColor = annotation != null ? annotation.belowColor : 0;
+		}
+
+		/**
+		 * @param img the image, may be <code>null</code>
+		 * @return the array access if available, which identifies slices re-created on each call,
+		 *         or else the image itself
+		 */
+		private static Object identityOf(final RandomAccessibleInterval<FloatType> img) {
+			final FlatImage flat = FlatImage.of(img);
+			return flat != null ? flat : img;
+		}
+
+		private static boolean sameImage(final Object a, final Object b) {
+			return a instanceof FlatImage ? ((FlatImage) a).sameAs(
+					b instanceof FlatImage ? (FlatImage) b : null) : a == b;
+		}
+
+		/**
+		 * @param other the other fingerprint, may be <code>null</code>
+		 * @return <code>true</code> if both render the same pixels
+		 */
+		private boolean matches(final Fingerprint other) {
+			// an unknown version never matches
+			return other != null && version != null && version.equals(other.version)
+					&& sameImage(src, other.src) && sameImage(mask, other.mask)
+					&& sameImage(brightness, other.brightness) && lut == other.lut
+					&& min == other.min && max == other.max && maskColor == other.maskColor
+					&& brightnessLut == other.brightnessLut && brightnessMin == other.brightnessMin
+					&& brightnessMax == other.brightnessMax
+					&& brightnessThresh == other.brightnessThresh && belowColor == other.belowColor;
+		}
+	}
+
+	/**
+	 * Everything needed to render an image, captured on the UI thread so that the render thread
+	 * never reads state the UI thread may change meanwhile.
+	 */
+	private static final class Frame {
+
+		/** Identifies the request, a frame is stale once a newer one is requested */
+		private final long generation;
+
+		/** Identifies the colored image (values, coloring and annotation) and the values alone */
+		private final long content, values;
+
+		private final RandomAccessibleInterval<FloatType> src;
+
+		private final RealLUTConverter<FloatType> converter;
+
+		/** The annotator given in place of an annotation, <code>null</code> if none */
+		private final ImageAnnotator annotator;
+
+		private final Annotation annotation;
+
+		/** Flat access to the image and its annotation, <code>null</code> if unavailable */
+		private final FlatImage flatSrc, flatMask, flatBrightness;
+
+		/** Size of the source image and of the on-screen image */
+		private final int imgW, imgH, screenW, screenH;
+
+		/** The pyramid level sampled, each level halves the size of the one below */
+		private final int level;
+
+		/** The column and row of the level sampled by each on-screen column and row */
+		private final int[] srcCols, srcRows;
+
+		private Frame(final long generation, final PreviewImageDisplay display, final int screenW,
+				final int screenH) {
+			this.generation = generation;
+			content = display.content;
+			values = display.values;
+			src = display.rawImage;
+			converter = display.converter;
+			annotator = display.annotator;
+			annotation = display.annotation;
+			// a LUT too long for 8-bit indices takes the generic path
+			final boolean flat = LutPalette.fits(converter.getLUT());
+			flatSrc = flat ? display.flatSrc : null;
+			flatMask = flat ? display.flatMask : null;
+			flatBrightness = flat ? display.flatBrightness : null;
+			imgW = display.imgW;
+			imgH = display.imgH;
+			this.screenW = screenW;
+			this.screenH = screenH;
+
+			// source pixels per on-screen pixel
+			final double scaleX = imgW / display.zoom / screenW;
+			final double scaleY = imgH / display.zoom / screenH;
+			final int maxLevel = 31 - Integer.numberOfLeadingZeros(Math.max(imgW, imgH));
+			final int minification = (int) Math.min(scaleX, scaleY);
+			// the coarsest level whose pixels are no larger than the on-screen pixels
+			level = minification >= 2
+					? Math.min(31 - Integer.numberOfLeadingZeros(minification), maxLevel)
+					: 0;
+			srcCols = levelCoords(screenW, display.viewX, scaleX, level, imgW);
+			srcRows = levelCoords(screenH, display.viewY, scaleY, level, imgH);
+		}
+
+		/**
+		 * @return the annotator of the frame, <code>null</code> if none
+		 */
+		private ImageAnnotator makeAnnotator() {
+			return annotator != null ? annotator
+					: annotation != null ? annotation.toAnnotator() : null;
+		}
+
+		/**
+		 * @param screenW the on-screen size
+		 * @param origin  the source coordinate at the on-screen origin
+		 * @param scale   the source pixels per on-screen pixel
+		 * @param level   the pyramid level
+		 * @param imgW    the source size
+		 * @return the pixel of the level sampled by each on-screen pixel
+		 */
+		private static int[] levelCoords(final int screenW, final double origin,
+				final double scale, final int level, final int imgW) {
+			final int levelW = levelSize(imgW, level);
+			final int[] coords = new int[screenW];
+			for (int x = 0; x < screenW; x++)
+				coords[x] = Math.min((int) (origin + (x + 0.5) * scale) >> level, levelW - 1);
+			return coords;
+		}
+	}
+
+	/** The number of pixels above which a region is converted on all cores */
+	private static final int PARALLEL_PIXELS = 1 << 16;
+
+	/** The edge length of a tile of the pyramid is 2^TILE_BITS */
+	private static final int TILE_BITS = 8;
+
+	private static final int TILE_SIZE = 1 << TILE_BITS;
+
+	private static final int TILE_MASK = TILE_SIZE - 1;
+
+	/** The number of downsampled tiles kept, the least recently used are evicted first */
+	private static final int MAX_CACHED_TILES = 64;
+
+	/** The zoom factor of a scroll step */
+	private static final double ZOOM_STEP = 1.25;
+
+	/** The largest on-screen size (in pixels) of a source pixel when zooming in */
+	private static final double MAX_PIX_SIZE = 32;
+
 	/** Threshold of pixScale change that necessitates resampling */
 	private static final double RELOAD_THR = 1.5;
 
@@ -71,43 +420,165 @@ public class PreviewImageDisplay {
 	/** The place to show image */
 	final private ImageView view;
 
+	/** Converts, annotates and samples images off the UI thread, one frame at a time */
+	private final ExecutorService renderer;
+
+	/** Incremented on each frame request (and on showing the placeholder) */
+	private final AtomicLong generation;
+
+	/** A pixel buffer handed back by the UI thread after presenting it, reused by the renderer */
+	private final AtomicReference<int[]> spareBuffer;
+
+	/** The last requested frame, written from UI thread */
+	private volatile Frame lastFrame;
+
+	// The fields below are only accessed from UI thread
+
 	/** Height and width of the source image */
 	private int imgW, imgH;
 
-	/** The actual size (in pixel) on screen of a pixel from the source image */
+	/** The actual size (in pixel) on screen of a pixel from the source image when not zoomed */
 	private double pixScale, lastReloadPixScale;
 
-	/** The underlying pixel cache */
-	private WritableImage writableImage;
+	/** The magnification relative to fitting the whole image, at least 1 */
+	private double zoom = 1;
 
-	/** The intermediate cache between IJ and FX */
-	private ARGBScreenImage screenImage;
+	/** The source coordinates shown at the top left corner of the view */
+	private double viewX, viewY;
+
+	/** The mouse location last seen while dragging */
+	private double dragX, dragY;
+
+	/** The on-screen image, replaced when a frame of another size is presented */
+	private WritableImage writableImage;
 
 	/** The values */
 	private RandomAccessibleInterval<FloatType> rawImage;
 
-	/** The LUT-colored but unannotated image */
-	private RandomAccessibleInterval<ARGBType> coloredImage;
+	/** The converter of the current image as given, and a copy of its state when given */
+	private RealLUTConverter<FloatType> givenConverter, converter;
+
+	/** The annotator of the current image if given as an {@link ImageAnnotator} */
+	private ImageAnnotator annotator;
+
+	/** A copy of the annotation of the current image if given as an {@link Annotation} */
+	private Annotation annotation;
+
+	/** Flat access to the current image and its annotation, <code>null</code> if unavailable */
+	private FlatImage flatSrc, flatMask, flatBrightness;
+
+	/** Incremented when the colored image, or the values alone, change */
+	private long content, values;
+
+	/** True if an image (rather than the placeholder) is shown */
+	private boolean hasImage;
+
+	/** What the current image was rendered from, <code>null</code> if unknown */
+	private Fingerprint fingerprint;
+
+	/** The generation of the last presented frame */
+	private long shownGeneration;
+
+	// The fields below are only accessed from the render thread
+
+	/**
+	 * The converted and annotated source image, level 0 of the pyramid. It is allocated at full
+	 * size but only converted tile by tile (see {@link #convertedTiles}), as the levels above are
+	 * sampled from it and a recolor requantizes it in place.
+	 */
+	private ARGBScreenImage screenImage;
+
+	/** The content and values of the frame <code>screenImage</code> was last prepared for */
+	private long renderedContent = -1, renderedValues = -1;
+
+	/** The number of tiles along X of level 0 */
+	private int tilesX;
+
+	/** The tiles of level 0 converted, and the tiles whose values are quantized */
+	private final BitSet convertedTiles = new BitSet(), quantizedTiles = new BitSet();
+
+	/** The tiles of the levels above 0 (see {@link #tileKey}), least recently used first */
+	private final Map<Long, int[]> pyramid = new LinkedHashMap<Long, int[]>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, int[]> eldest) {
+			return size() > MAX_CACHED_TILES;
+		}
+	};
+
+	/** The 8-bit color index of each pixel of an image rendered through {@link FlatImage} */
+	private byte[] indices;
+
+	/** The source, range and number of bins <code>indices</code> were quantized with */
+	private FlatImage indicesSrc;
+
+	private double indicesMin, indicesMax;
+
+	private int indicesBins;
+
+	/** The colors of the indices under the LUT last rendered */
+	private final LutPalette palette = new LutPalette();
+
+	/** The LUT-converted brightness image of the composite, kept across images */
+	private int[] brightnessColors;
+
+	/** What {@link #brightnessColors} were converted from */
+	private FlatImage brightnessColorsSrc;
+
+	private ColorTable brightnessColorsLut;
+
+	private double brightnessColorsMin, brightnessColorsMax;
+
+	private float brightnessColorsThresh;
+
+	private int brightnessColorsBelow;
 
 	public PreviewImageDisplay(final Pane pane, final Group cursor, final ImageView view) {
 		this.clickPane = pane;
 		this.cursor = cursor;
 		this.view = view;
+		this.renderer = Executors.newSingleThreadExecutor();
+		this.generation = new AtomicLong();
+		this.spareBuffer = new AtomicReference<>();
 		cursorX = new SimpleObjectProperty<>();
 		cursorX.set(0.0);
 		cursorY = new SimpleObjectProperty<>();
 		cursorY.set(0.0);
 
-		// when clicked: change coordinate
+		// when clicked: change coordinate (unless the click ends a drag)
 		clickPane.setOnMouseClicked(event -> {
-			cursorX.set(getMousePixCoord(event.getX(), clickPane.getWidth()));
-			cursorY.set(getMousePixCoord(event.getY(), clickPane.getHeight()));
+			if (!event.isStillSincePress())
+				return;
+			cursorX.set(getMousePixCoord(event.getX(), viewX, imgW));
+			cursorY.set(getMousePixCoord(event.getY(), viewY, imgH));
 		});
 		clickPane.setVisible(false);
 
+		// when scrolled: zoom around the mouse
+		clickPane.setOnScroll(event -> {
+			if (event.getDeltaY() != 0)
+				zoomAt(event.getX(), event.getY(),
+						event.getDeltaY() > 0 ? ZOOM_STEP : 1 / ZOOM_STEP);
+		});
+
+		// when dragged: pan
+		clickPane.setOnMousePressed(event -> {
+			dragX = event.getX();
+			dragY = event.getY();
+		});
+		clickPane.setOnMouseDragged(event -> {
+			final double screenPerSrc = pixScale * zoom;
+			if (panTo(viewX + (dragX - event.getX()) / screenPerSrc,
+					viewY + (dragY - event.getY()) / screenPerSrc))
+				requestFrame();
+			dragX = event.getX();
+			dragY = event.getY();
+		});
+
 		// when coordinate changed: move cursor
-		cursorXYChangedHandler =
-				(obs, oldVal, newVal) -> moveCursorImpl(cursorX.get(), cursorY.get());
+		cursorXYChangedHandler = (obs, oldVal, newVal) -> placeCursor();
 		cursorX.addListener(cursorXYChangedHandler);
 		cursorY.addListener(cursorXYChangedHandler);
 		cursor.setVisible(false);
@@ -135,22 +606,14 @@ public class PreviewImageDisplay {
 		return cursorY;
 	}
 
-	/**
-	 * @return The LUT colored image, may be used by another display to composite the image
-	 * @see #setImage
-	 */
-	public RandomAccessibleInterval<ARGBType> getColorImage() {
-		return coloredImage;
-	}
-
 	/**
 	 * @param x the x coordinate of mouse
 	 * @param y the y coordinate of mouse
 	 * @return The value from source image under the mouse event
 	 */
 	public double getValueUnderMouse(final double x, double y) {
-		int pixelX = (int) getMousePixCoord(x, clickPane.getWidth());
-		int pixelY = (int) getMousePixCoord(y, clickPane.getHeight());
+		int pixelX = (int) getMousePixCoord(x, viewX, imgW);
+		int pixelY = (int) getMousePixCoord(y, viewY, imgH);
 
 		if (rawImage == null)
 			return Double.NaN;
@@ -162,14 +625,65 @@ public class PreviewImageDisplay {
 	/**
 	 * Shows an float-valued image, colored by a converter and possibly annotated by a annotator. If
 	 * either of the first two arguments are <code>null</code>, the display will show the
-	 * {@link #PLACEHOLDER_IMAGE}.
-	 * 
+	 * {@link #PLACEHOLDER_IMAGE}. The image is rendered in the background and shown once ready.
+	 *
 	 * @param src       The source image
 	 * @param converter The LUT converter
 	 * @param annotator The post-conversion processor functional
 	 */
 	public void setImage(final RandomAccessibleInterval<FloatType> src,
 			final RealLUTConverter<FloatType> converter, final ImageAnnotator annotator) {
+		fingerprint = null;
+		show(src, converter, annotator, null);
+	}
+
+	/**
+	 * Shows an float-valued image, colored by a converter and possibly annotated. Images backed by
+	 * arrays (including slices of them) are rendered directly from the arrays on all cores. If
+	 * either of the first two arguments are <code>null</code>, the display will show the
+	 * {@link #PLACEHOLDER_IMAGE}. The image is rendered in the background and shown once ready.
+	 *
+	 * @param src        The source image
+	 * @param converter  The LUT converter
+	 * @param annotation The annotation, may be <code>null</code>
+	 */
+	public void setImage(final RandomAccessibleInterval<FloatType> src,
+			final RealLUTConverter<FloatType> converter, final Annotation annotation) {
+		setImage(src, converter, annotation, null);
+	}
+
+	/**
+	 * Same as {@link #setImage(RandomAccessibleInterval, RealLUTConverter, Annotation)}, but does
+	 * nothing if the same image is already shown with the same coloring and annotation (see
+	 * {@link Fingerprint}).
+	 *
+	 * @param src        The source image
+	 * @param converter  The LUT converter
+	 * @param annotation The annotation, may be <code>null</code>
+	 * @param version    Changes whenever the values of the images or the annotation (e.g. the
+	 *                   test of its mask) change, <code>null</code> to always render
+	 */
+	public void setImage(final RandomAccessibleInterval<FloatType> src,
+			final RealLUTConverter<FloatType> converter, final Annotation annotation,
+			final Object version) {
+		if (src == null || converter == null) {
+			// the placeholder is already shown
+			if (!hasImage && view.getImage() == PLACEHOLDER_IMAGE)
+				return;
+			fingerprint = null;
+			show(src, converter, null, annotation);
+			return;
+		}
+		final Fingerprint newFingerprint = new Fingerprint(src, converter, annotation, version);
+		if (hasImage && newFingerprint.matches(fingerprint))
+			return;
+		fingerprint = newFingerprint;
+		show(src, converter, null, annotation);
+	}
+
+	private void show(final RandomAccessibleInterval<FloatType> src,
+			final RealLUTConverter<FloatType> converter, final ImageAnnotator annotator,
+			final Annotation annotation) {
 		rawImage = src;
 
 		final int oldW = imgW;
@@ -178,52 +692,99 @@ public class PreviewImageDisplay {
 		if (src != null && converter != null) {
 			imgW = (int) src.dimension(0);
 			imgH = (int) src.dimension(1);
-		} else {
-			imgW = (int) PLACEHOLDER_IMAGE.getWidth();
-			imgH = (int) PLACEHOLDER_IMAGE.getHeight();
-		}
-
-		// reallocate buffers
-		if (oldW != imgW || oldH != imgH)
-			screenImage = new ARGBScreenImage(imgW, imgH);
-
-		if (src != null && converter != null) {
-			coloredImage = Converters.convert(src, converter, new ARGBType());
-
-			// convert and annotate image
-			Cursor<ARGBType> dstCsr = screenImage.localizingCursor();
-			RandomAccess<ARGBType> lutedRA = coloredImage.randomAccess();
-			RandomAccess<FloatType> valRA = src.randomAccess();
-			while (dstCsr.hasNext()) {
-				dstCsr.fwd();
-				lutedRA.setPosition(dstCsr);
-				valRA.setPosition(dstCsr);
-
-				dstCsr.get().set(annotator != null ? //
-						annotator.annotate(valRA, lutedRA) : lutedRA.get());
-			}
 
-			view.setOpacity(1);
+			// the caller may change the converter and annotation while the frame renders
+			this.givenConverter = converter;
+			this.converter = copyOf(converter);
+			this.annotator = annotator;
+			this.annotation = annotation != null ? annotation.snapshot() : null;
+			resolveFlat(src);
+			content++;
+			values++;
+			hasImage = true;
 
 			clickPane.setVisible(true);
-			cursor.setVisible(true);
 		} else {
+			hasImage = false;
+			lastFrame = null;
+			// drop the frames being rendered
+			shownGeneration = generation.incrementAndGet();
+
 			// show placeholder
-			SwingFXUtils.fromFXImage(PLACEHOLDER_IMAGE, screenImage.image());
+			imgW = (int) PLACEHOLDER_IMAGE.getWidth();
+			imgH = (int) PLACEHOLDER_IMAGE.getHeight();
+			view.setImage(PLACEHOLDER_IMAGE);
 
 			view.setOpacity(0.3);
 
 			clickPane.setVisible(false);
-			cursor.setVisible(false);
+		}
+
+		// keep the zoom across images of the same size (e.g. other preview options)
+		if (oldW != imgW || oldH != imgH || !hasImage) {
+			zoom = 1;
+			viewX = viewY = 0;
 		}
 
 		// resize with parent
 		Bounds parentBounds = view.getParent().getLayoutBounds();
 		fitSize(parentBounds.getWidth() - 10, parentBounds.getHeight() - 10);
+		placeCursor();
+
+		if (hasImage) {
+			// force update as content may change
+			lastReloadPixScale = pixScale;
+			requestFrame();
+		}
+	}
 
-		// force update as content may change
-		lastReloadPixScale = Double.MIN_VALUE;
-		reloadImageIfNecessary();
+	/**
+	 * Re-renders regions of the current image after their values have changed in place. Only the
+	 * tiles covering those regions are converted again, once the frame being rendered (if any)
+	 * has been shown.
+	 *
+	 * @param regions the changed regions of the source image
+	 * @return <code>false</code> if there is no image to update (e.g. the placeholder is shown)
+	 */
+	public boolean updateRegions(final List<Interval> regions) {
+		if (!hasImage || lastFrame == null)
+			return false;
+
+		renderer.execute(() -> {
+			invalidateTiles(regions);
+			// the latest frame may have been rendered already
+			final Frame frame = lastFrame;
+			if (frame != null && frame.content == renderedContent)
+				render(frame);
+		});
+		return true;
+	}
+
+	/**
+	 * Recolors the current image after the LUT or the range of its converter, or its annotation,
+	 * has changed while its values have not. The values are kept as 8-bit color indices, so a new
+	 * LUT only takes a new palette, and a new range a cheap requantization.
+	 *
+	 * @param annotation the new annotation, may be <code>null</code>
+	 * @return <code>false</code> if the image cannot be recolored (e.g. the placeholder is shown or
+	 *         the image is not backed by an array) and should be set again with
+	 *         {@link #setImage}
+	 */
+	public boolean recolor(final Annotation annotation) {
+		if (!hasImage || flatSrc == null || lastFrame == null)
+			return false;
+		this.annotation = annotation != null ? annotation.snapshot() : null;
+		this.annotator = null;
+		resolveFlat(rawImage);
+		if (flatSrc == null)
+			return false;
+
+		converter = copyOf(givenConverter);
+		content++;
+		requestFrame();
+		if (fingerprint != null)
+			fingerprint = new Fingerprint(rawImage, converter, annotation, fingerprint.version);
+		return true;
 	}
 
 	/**
@@ -237,14 +798,14 @@ public class PreviewImageDisplay {
 		this.pixScale = pixScale;
 		view.setFitWidth(imgW * pixScale);
 		view.setFitHeight(imgH * pixScale);
-		cursor.setScaleX(pixScale);
-		cursor.setScaleY(pixScale);
-		moveCursorImpl(cursorX.get(), cursorY.get());
+		// the zoom limit depends on the scale
+		zoom = Math.min(zoom, getMaxZoom());
+		panTo(viewX, viewY);
 	}
 
 	/**
 	 * Moves the mouse cursor to the desired location. Updates {@link #cursorX}.
-	 * 
+	 *
 	 * @param x The new cursor X
 	 * @param y The new cursor Y
 	 */
@@ -259,24 +820,74 @@ public class PreviewImageDisplay {
 	public void destroy() {
 		cursorX.removeListener(cursorXYChangedHandler);
 		cursorY.removeListener(cursorXYChangedHandler);
+		generation.incrementAndGet();
+		renderer.shutdownNow();
 	}
 
 	/**
-	 * Move the cursor to the desired location.
-	 * 
-	 * @param x The new cursor X
-	 * @param y The new cursor Y
+	 * Zooms in or out keeping the source pixel at a location of the view in place.
+	 *
+	 * @param x      the x coordinate in the view
+	 * @param y      the y coordinate in the view
+	 * @param factor the change of magnification
 	 */
-	private void moveCursorImpl(final Double x, final Double y) {
-		double cursorX = (x + 0.5) * pixScale;
-		double cursorY = (y + 0.5) * pixScale;
-		cursor.setTranslateX(cursorX);
-		cursor.setTranslateY(cursorY);
+	private void zoomAt(final double x, final double y, final double factor) {
+		if (!hasImage)
+			return;
+		final double newZoom = Math.min(Math.max(zoom * factor, 1), getMaxZoom());
+		if (newZoom == zoom)
+			return;
+		final double srcX = viewX + x / (pixScale * zoom);
+		final double srcY = viewY + y / (pixScale * zoom);
+		zoom = newZoom;
+		panTo(srcX - x / (pixScale * zoom), srcY - y / (pixScale * zoom));
+		requestFrame();
+	}
+
+	/**
+	 * Moves the view to show the source coordinates at its top left corner, kept within the
+	 * image.
+	 *
+	 * @param x the source x coordinate
+	 * @param y the source y coordinate
+	 * @return <code>true</code> if the view has moved
+	 */
+	private boolean panTo(final double x, final double y) {
+		final double newX = Math.min(Math.max(x, 0), imgW - imgW / zoom);
+		final double newY = Math.min(Math.max(y, 0), imgH - imgH / zoom);
+		final boolean moved = newX != viewX || newY != viewY;
+		viewX = newX;
+		viewY = newY;
+		placeCursor();
+		return moved && hasImage;
+	}
+
+	/**
+	 * @return the largest zoom, at which a source pixel is {@link #MAX_PIX_SIZE} on screen
+	 */
+	private double getMaxZoom() {
+		return Math.max(MAX_PIX_SIZE / pixScale, 1);
+	}
+
+	/**
+	 * Moves and scales the cursor to the source pixel at ({@link #cursorX}, {@link #cursorY}),
+	 * hidden if that pixel is not in view.
+	 */
+	private void placeCursor() {
+		final double screenPerSrc = pixScale * zoom;
+		final double x = (cursorX.get() + 0.5 - viewX) * screenPerSrc;
+		final double y = (cursorY.get() + 0.5 - viewY) * screenPerSrc;
+		cursor.setScaleX(screenPerSrc);
+		cursor.setScaleY(screenPerSrc);
+		cursor.setTranslateX(x);
+		cursor.setTranslateY(y);
+		cursor.setVisible(hasImage && x >= 0 && y >= 0 && x <= view.getFitWidth()
+				&& y <= view.getFitHeight());
 	}
 
 	/**
 	 * Make the view fit the size.
-	 * 
+	 *
 	 * @param w the desired width
 	 * @param h the desired height
 	 */
@@ -288,41 +899,502 @@ public class PreviewImageDisplay {
 
 	/**
 	 * Converts event coordinate to pixel coordinate in the image
-	 * 
+	 *
 	 * @param eventCoord x/ycoordinate of the event
+	 * @param origin     the source x/y coordinate at the top left corner of the view
 	 * @param imgWH      W/H of the image
 	 * @return coordinate of pixel at which the event occurs
 	 */
-	private double getMousePixCoord(double eventCoord, double imgWH) {
-		return Math.min(Math.round(eventCoord / pixScale - 0.5), (int) (imgWH / pixScale) - 1);
+	private double getMousePixCoord(double eventCoord, double origin, int imgWH) {
+		return Math.min(Math.max(Math.floor(origin + eventCoord / (pixScale * zoom)), 0),
+				imgWH - 1);
 	}
 
 	/**
 	 * Reloads the image only if the ratio between {@link #pixScale} and {@link #lastReloadPixScale}
 	 * or the inverse is no less than RELOAD_THR because small pixScale steps (e.g. during window
-	 * resizing) marginally improves appearance.
+	 * resizing) marginally improves appearance. The placeholder is scaled by the view.
 	 */
 	private void reloadImageIfNecessary() {
-		if (screenImage == null || (Math.max(pixScale / lastReloadPixScale,
+		if (!hasImage || (Math.max(pixScale / lastReloadPixScale,
 				lastReloadPixScale / pixScale) < RELOAD_THR))
 			return;
 		lastReloadPixScale = pixScale;
 
-		writableImage = new WritableImage((int) view.getFitWidth(), (int) view.getFitHeight());
-		view.setImage(writableImage);
-
-		// manual nearest neighbor sampling
-		PixelWriter pw = writableImage.getPixelWriter();
-		RandomAccess<ARGBType> ra = screenImage.randomAccess();
-		long[] position = new long[2];
-		final double wiW = writableImage.getWidth();
-		final double wiH = writableImage.getHeight();
-		for (int x = 0; x < wiW; x++)
-			for (int y = 0; y < wiH; y++) {
-				position[0] = Math.round(x / wiW * (imgW - 1));
-				position[1] = Math.round(y / wiH * (imgH - 1));
-				ra.setPosition(position);
-				pw.setArgb(x, y, ra.get().get());
+		requestFrame();
+	}
+
+	/**
+	 * Renders the visible part of the current image at the current on-screen size in the
+	 * background, dropping any frame requested before.
+	 */
+	private void requestFrame() {
+		final int wiW = (int) view.getFitWidth();
+		final int wiH = (int) view.getFitHeight();
+		if (wiW <= 0 || wiH <= 0)
+			return;
+		final Frame frame = new Frame(generation.incrementAndGet(), this, wiW, wiH);
+		lastFrame = frame;
+		renderer.execute(() -> render(frame));
+	}
+
+	/**
+	 * @param frame the frame
+	 * @return <code>true</code> if a newer frame has been requested
+	 */
+	private boolean isStale(final Frame frame) {
+		return frame.generation != generation.get();
+	}
+
+	/**
+	 * Renders a frame: converts the tiles of level 0 covering the visible part, builds the
+	 * visible tiles of the sampled level and samples them. Runs on the render thread.
+	 *
+	 * @param frame the frame
+	 */
+	private void render(final Frame frame) {
+		if (isStale(frame))
+			return;
+		prepare(frame);
+
+		// the visible tiles of the level
+		final int level = frame.level;
+		final int tx0 = frame.srcCols[0] >> TILE_BITS;
+		final int tx1 = frame.srcCols[frame.screenW - 1] >> TILE_BITS;
+		final int ty0 = frame.srcRows[0] >> TILE_BITS;
+		final int ty1 = frame.srcRows[frame.screenH - 1] >> TILE_BITS;
+
+		// the source pixels they cover
+		final int span = TILE_BITS + level;
+		convertTiles(frame, tx0 << span, ty0 << span,
+				Math.min((tx1 + 1) << span, frame.imgW) - 1,
+				Math.min((ty1 + 1) << span, frame.imgH) - 1);
+		if (isStale(frame))
+			return;
+
+		if (level > 0)
+			for (int ty = ty0; ty <= ty1; ty++)
+				for (int tx = tx0; tx <= tx1; tx++) {
+					if (isStale(frame))
+						return;
+					getTile(frame, level, tx, ty);
+				}
+
+		final int[] pixels = sample(frame);
+		Platform.runLater(() -> present(frame, pixels));
+	}
+
+	/**
+	 * Makes the buffers ready for a frame, and drops the tiles made for another content.
+	 *
+	 * @param frame the frame
+	 */
+	private void prepare(final Frame frame) {
+		// reallocate buffers
+		if (screenImage == null || screenImage.dimension(0) != frame.imgW
+				|| screenImage.dimension(1) != frame.imgH) {
+			screenImage = new ARGBScreenImage(frame.imgW, frame.imgH);
+			tilesX = (frame.imgW + TILE_SIZE - 1) >> TILE_BITS;
+			renderedContent = renderedValues = -1;
+		}
+		if (frame.flatSrc != null
+				&& (indices == null || indices.length != frame.imgW * frame.imgH)) {
+			indices = new byte[frame.imgW * frame.imgH];
+			renderedContent = renderedValues = -1;
+		}
+		if (frame.content == renderedContent)
+			return;
+
+		convertedTiles.clear();
+		pyramid.clear();
+		final double min = frame.converter.getMin();
+		final double max = frame.converter.getMax();
+		final int bins = frame.converter.getLUT().getLength();
+		if (frame.values != renderedValues || frame.flatSrc == null
+				|| !frame.flatSrc.sameAs(indicesSrc) || min != indicesMin || max != indicesMax
+				|| bins != indicesBins) {
+			quantizedTiles.clear();
+			indicesSrc = frame.flatSrc;
+			indicesMin = min;
+			indicesMax = max;
+			indicesBins = bins;
+		}
+		renderedContent = frame.content;
+		renderedValues = frame.values;
+	}
+
+	/**
+	 * Converts the tiles of level 0 covering a rectangle unless already converted, on all cores
+	 * if the image is backed by arrays.
+	 *
+	 * @param frame the frame
+	 * @param x0    the first source x
+	 * @param y0    the first source y
+	 * @param x1    the last source x
+	 * @param y1    the last source y
+	 */
+	private void convertTiles(final Frame frame, final int x0, final int y0, final int x1,
+			final int y1) {
+		final IntStream.Builder missing = IntStream.builder();
+		for (int ty = y0 >> TILE_BITS; ty <= y1 >> TILE_BITS; ty++)
+			for (int tx = x0 >> TILE_BITS; tx <= x1 >> TILE_BITS; tx++)
+				if (!convertedTiles.get(ty * tilesX + tx))
+					missing.add(ty * tilesX + tx);
+		IntStream tiles = missing.build();
+		// the annotator of images not backed by arrays is not thread-safe
+		final ImageAnnotator annotator = frame.flatSrc == null ? frame.makeAnnotator() : null;
+		if (frame.flatSrc != null)
+			tiles = tiles.parallel();
+
+		final int[] converted = tiles.filter(tile -> {
+			final long tx = tile % tilesX;
+			final long ty = tile / tilesX;
+			final Interval region = new FinalInterval(
+					new long[] {tx << TILE_BITS, ty << TILE_BITS},
+					new long[] {Math.min((tx + 1) << TILE_BITS, frame.imgW) - 1,
+							Math.min((ty + 1) << TILE_BITS, frame.imgH) - 1});
+			return convertRegion(frame, region, annotator, !quantizedTiles.get(tile));
+		}).toArray();
+		for (int tile : converted) {
+			convertedTiles.set(tile);
+			quantizedTiles.set(tile);
+		}
+	}
+
+	/**
+	 * Drops the tiles of all levels covering regions whose values have changed in place. Runs on
+	 * the render thread.
+	 *
+	 * @param regions the changed regions of the source image
+	 */
+	private void invalidateTiles(final List<Interval> regions) {
+		if (screenImage == null)
+			return;
+		final int w = (int) screenImage.dimension(0);
+		final int h = (int) screenImage.dimension(1);
+		final int maxLevel = 31 - Integer.numberOfLeadingZeros(Math.max(w, h));
+		for (Interval region : regions) {
+			final int x0 = (int) Math.max(region.min(0), 0);
+			final int y0 = (int) Math.max(region.min(1), 0);
+			final int x1 = (int) Math.min(region.max(0), w - 1);
+			final int y1 = (int) Math.min(region.max(1), h - 1);
+			if (x0 > x1 || y0 > y1)
+				continue;
+			for (int ty = y0 >> TILE_BITS; ty <= y1 >> TILE_BITS; ty++)
+				for (int tx = x0 >> TILE_BITS; tx <= x1 >> TILE_BITS; tx++) {
+					convertedTiles.clear(ty * tilesX + tx);
+					quantizedTiles.clear(ty * tilesX + tx);
+				}
+			for (int level = 1; level <= maxLevel; level++) {
+				final int span = TILE_BITS + level;
+				for (int ty = y0 >> span; ty <= y1 >> span; ty++)
+					for (int tx = x0 >> span; tx <= x1 >> span; tx++)
+						pyramid.remove(tileKey(level, tx, ty));
+			}
+		}
+	}
+
+	/**
+	 * Gets a tile of a level above 0 from the cache, or builds it by averaging 2x2 pixels of the
+	 * level below. The tiles of level 0 it covers must have been converted.
+	 *
+	 * @param frame the frame
+	 * @param level the level, at least 1
+	 * @param tx    the tile column
+	 * @param ty    the tile row
+	 * @return the pixels of the tile in row-major order, {@link #TILE_SIZE} per row
+	 */
+	private int[] getTile(final Frame frame, final int level, final int tx, final int ty) {
+		final Long key = tileKey(level, tx, ty);
+		int[] tile = pyramid.get(key);
+		if (tile != null)
+			return tile;
+
+		final int[] level0 = screenImage.update(null).getCurrentStorageArray();
+		final int belowW = levelSize(frame.imgW, level - 1);
+		final int belowH = levelSize(frame.imgH, level - 1);
+		// the (up to) 2x2 tiles of the level below, null for level 0 or outside
+		final int[][] below = new int[4][];
+		if (level > 1)
+			for (int j = 0; j < 2; j++)
+				for (int i = 0; i < 2; i++)
+					if ((2 * tx + i) << TILE_BITS < belowW && (2 * ty + j) << TILE_BITS < belowH)
+						below[j * 2 + i] = getTile(frame, level - 1, 2 * tx + i, 2 * ty + j);
+
+		tile = new int[TILE_SIZE * TILE_SIZE];
+		final int w = Math.min(TILE_SIZE, levelSize(frame.imgW, level) - (tx << TILE_BITS));
+		final int h = Math.min(TILE_SIZE, levelSize(frame.imgH, level) - (ty << TILE_BITS));
+		for (int y = 0; y < h; y++)
+			for (int x = 0; x < w; x++) {
+				int a = 0, r = 0, g = 0, b = 0, n = 0;
+				for (int dy = 0; dy < 2; dy++)
+					for (int dx = 0; dx < 2; dx++) {
+						// the pixel in the level below
+						final int bx = ((tx << TILE_BITS) + x) * 2 + dx;
+						final int by = ((ty << TILE_BITS) + y) * 2 + dy;
+						if (bx >= belowW || by >= belowH)
+							continue;
+						final int argb = level == 1 ? level0[by * frame.imgW + bx]
+								: below[((by >> TILE_BITS) - 2 * ty) * 2 + (bx >> TILE_BITS)
+										- 2 * tx][(by & TILE_MASK) << TILE_BITS | (bx & TILE_MASK)];
+						a += argb >>> 24;
+						r += argb >> 16 & 0xff;
+						g += argb >> 8 & 0xff;
+						b += argb & 0xff;
+						n++;
+					}
+				tile[y << TILE_BITS | x] = (a / n) << 24 | (r / n) << 16 | (g / n) << 8 | (b / n);
+			}
+		pyramid.put(key, tile);
+		return tile;
+	}
+
+	/**
+	 * Samples the on-screen image from the level of a frame (nearest neighbor) into a pixel
+	 * buffer, reusing the buffer last handed back by the UI thread if large enough. The tiles
+	 * sampled must be ready.
+	 *
+	 * @param frame the frame
+	 * @return the pixels in row-major order
+	 */
+	private int[] sample(final Frame frame) {
+		final int w = frame.screenW;
+		final int h = frame.screenH;
+		int[] pixels = spareBuffer.getAndSet(null);
+		if (pixels == null || pixels.length < w * h)
+			pixels = new int[w * h];
+		final int[] level0 = screenImage.update(null).getCurrentStorageArray();
+		final int[] srcCols = frame.srcCols;
+		final int[] srcRows = frame.srcRows;
+		// the tiles of the current row of tiles, fetched once per row
+		final int[][] rowTiles = new int[(srcCols[w - 1] >> TILE_BITS) + 1][];
+
+		for (int y = 0, dst = 0; y < h; y++, dst += w) {
+			final int srcRow = srcRows[y];
+			// magnified rows repeat the previous one
+			if (y > 0 && srcRow == srcRows[y - 1]) {
+				System.arraycopy(pixels, dst - w, pixels, dst, w);
+				continue;
+			}
+			if (frame.level == 0) {
+				final int rowStart = srcRow * frame.imgW;
+				for (int x = 0; x < w; x++)
+					pixels[dst + x] = level0[rowStart + srcCols[x]];
+				continue;
+			}
+			if (y == 0 || srcRow >> TILE_BITS != srcRows[y - 1] >> TILE_BITS)
+				for (int tx = srcCols[0] >> TILE_BITS; tx < rowTiles.length; tx++)
+					rowTiles[tx] = getTile(frame, frame.level, tx, srcRow >> TILE_BITS);
+			final int rowStart = (srcRow & TILE_MASK) << TILE_BITS;
+			for (int x = 0; x < w; x++)
+				pixels[dst + x] =
+						rowTiles[srcCols[x] >> TILE_BITS][rowStart | (srcCols[x] & TILE_MASK)];
+		}
+		return pixels;
+	}
+
+	/**
+	 * Writes a rendered frame into the on-screen image in one call, unless a newer frame has
+	 * already been shown.
+	 *
+	 * @param frame  the frame
+	 * @param pixels the rendered pixels
+	 */
+	private void present(final Frame frame, final int[] pixels) {
+		if (frame.generation >= shownGeneration) {
+			shownGeneration = frame.generation;
+			if (writableImage == null || (int) writableImage.getWidth() != frame.screenW
+					|| (int) writableImage.getHeight() != frame.screenH)
+				writableImage = new WritableImage(frame.screenW, frame.screenH);
+			writableImage.getPixelWriter().setPixels(0, 0, frame.screenW, frame.screenH,
+					PixelFormat.getIntArgbInstance(), pixels, 0, frame.screenW);
+			if (view.getImage() != writableImage) {
+				view.setImage(writableImage);
+				view.setOpacity(1);
+			}
+		}
+		// hand the largest buffer back to the renderer
+		spareBuffer.accumulateAndGet(pixels,
+				(spare, given) -> spare == null || given.length > spare.length ? given : spare);
+	}
+
+	/**
+	 * Converts and annotates a region of a frame into {@link #screenImage}.
+	 *
+	 * @param frame     the frame
+	 * @param region    the region
+	 * @param annotator the annotator of the frame
+	 * @param quantize  <code>false</code> to reuse {@link #indices} (the values and their range
+	 *                  have not changed)
+	 * @return <code>false</code> if stopped early because the frame became stale
+	 */
+	private boolean convertRegion(final Frame frame, final Interval region,
+			final ImageAnnotator annotator, final boolean quantize) {
+		if (frame.flatSrc != null)
+			return convertRegionFlat(frame, region, quantize);
+		Cursor<ARGBType> dstCsr = Views.interval(screenImage, region).localizingCursor();
+		RandomAccess<ARGBType> lutedRA =
+				Converters.convert(frame.src, frame.converter, new ARGBType()).randomAccess();
+		RandomAccess<FloatType> valRA = frame.src.randomAccess();
+		while (dstCsr.hasNext()) {
+			dstCsr.fwd();
+			lutedRA.setPosition(dstCsr);
+			valRA.setPosition(dstCsr);
+
+			dstCsr.get().set(annotator != null ? //
+					annotator.annotate(valRA, lutedRA) : lutedRA.get());
+		}
+		return true;
+	}
+
+	/**
+	 * Same as {@link #convertRegion} but reads the arrays behind the images and writes the array
+	 * behind {@link #screenImage}. Values are quantized into {@link #indices} and colored through
+	 * {@link #palette}. Stops early if the frame becomes stale.
+	 *
+	 * @param frame    the frame
+	 * @param region   the region
+	 * @param quantize <code>false</code> to reuse {@link #indices}
+	 * @return <code>false</code> if stopped early
+	 */
+	private boolean convertRegionFlat(final Frame frame, final Interval region,
+			final boolean quantize) {
+		final int[] dst = screenImage.update(null).getCurrentStorageArray();
+		final ColorTable lut = frame.converter.getLUT();
+		final int[] palette = this.palette.of(lut);
+		final int bins = lut.getLength();
+		final double min = frame.converter.getMin();
+		final double max = frame.converter.getMax();
+		final int imgW = frame.imgW;
+		final byte[] indices = this.indices;
+		final FlatImage src = frame.flatSrc;
+		final FlatImage mask = frame.flatMask;
+		final FlatImage brightness = frame.flatBrightness;
+		final DoublePredicate maskTest = mask != null ? frame.annotation.maskTest : null;
+		final int maskColor = mask != null ? frame.annotation.maskColor : 0;
+		final int[] brightnessColors = brightness != null ? getBrightnessColors(frame) : null;
+
+		final int x0 = (int) region.min(0);
+		final int x1 = (int) region.max(0);
+		IntStream rows = IntStream.rangeClosed((int) region.min(1), (int) region.max(1));
+		if (Intervals.numElements(region) > PARALLEL_PIXELS)
+			rows = rows.parallel();
+		rows.forEach(y -> {
+			if (isStale(frame))
+				return;
+			for (int x = x0, i = y * imgW + x0; x <= x1; x++, i++) {
+				if (quantize)
+					indices[i] = (byte) LutPalette.bin(bins, min, max, src.get(x, y));
+				int argb = palette[indices[i] & 0xff];
+				if (mask != null && maskTest.test(mask.get(x, y)))
+					argb = maskColor;
+				if (brightnessColors != null)
+					argb = Annotation.multiply(argb, brightnessColors[i]);
+				dst[i] = argb;
 			}
+		});
+		return !isStale(frame);
+	}
+
+	/**
+	 * Converts the brightness image of the composite unless it was already converted with the
+	 * same LUT, range and threshold, so that recoloring the source (e.g. a new LUT or contrast)
+	 * leaves only lookups to do.
+	 *
+	 * @param frame the frame
+	 * @return the colors of the brightness image in row-major order
+	 */
+	private synchronized int[] getBrightnessColors(final Frame frame) {
+		final Annotation annotation = frame.annotation;
+		final RealLUTConverter<FloatType> conv = annotation.brightnessConverter;
+		final ColorTable lut = conv.getLUT();
+		final double min = conv.getMin();
+		final double max = conv.getMax();
+		final int imgW = frame.imgW;
+		final int imgH = frame.imgH;
+		if (brightnessColors != null && brightnessColors.length == imgW * imgH
+				&& frame.flatBrightness.sameAs(brightnessColorsSrc) && lut == brightnessColorsLut
+				&& min == brightnessColorsMin && max == brightnessColorsMax
+				&& annotation.brightnessThresh == brightnessColorsThresh
+				&& annotation.belowColor == brightnessColorsBelow)
+			return brightnessColors;
+
+		final FlatImage brightness = frame.flatBrightness;
+		final int[] colors = new int[imgW * imgH];
+		IntStream.range(0, imgH).parallel().forEach(y -> {
+			for (int x = 0, i = y * imgW; x < imgW; x++, i++)
+				colors[i] = annotation.brightnessColor(brightness.get(x, y), lut, min, max);
+		});
+		brightnessColors = colors;
+		brightnessColorsSrc = brightness;
+		brightnessColorsLut = lut;
+		brightnessColorsMin = min;
+		brightnessColorsMax = max;
+		brightnessColorsThresh = annotation.brightnessThresh;
+		brightnessColorsBelow = annotation.belowColor;
+		return colors;
+	}
+
+	/**
+	 * Sets up {@link #flatSrc}, {@link #flatMask} and {@link #flatBrightness} if the source and
+	 * all images of the annotation are backed by arrays.
+	 *
+	 * @param src the source image
+	 */
+	private void resolveFlat(final RandomAccessibleInterval<FloatType> src) {
+		flatSrc = flatMask = flatBrightness = null;
+		// only the annotations known to the flat path
+		if (annotator != null)
+			return;
+		final FlatImage flatSrc = FlatImage.of(src);
+		final FlatImage flatMask = annotation != null ? flatOf(annotation.mask, src) : null;
+		final FlatImage flatBrightness =
+				annotation != null ? flatOf(annotation.brightness, src) : null;
+		if (flatSrc == null || annotation != null && (annotation.mask != null && flatMask == null
+				|| annotation.brightness != null && flatBrightness == null))
+			return;
+		this.flatSrc = flatSrc;
+		this.flatMask = flatMask;
+		this.flatBrightness = flatBrightness;
+	}
+
+	/**
+	 * @param img  the image, may be <code>null</code>
+	 * @param like the image whose size <code>img</code> must have
+	 * @return the flat access to <code>img</code>, or <code>null</code> if unavailable
+	 */
+	private static FlatImage flatOf(final RandomAccessibleInterval<FloatType> img,
+			final RandomAccessibleInterval<FloatType> like) {
+		if (img == null || img.dimension(0) != like.dimension(0)
+				|| img.dimension(1) != like.dimension(1))
+			return null;
+		return FlatImage.of(img);
+	}
+
+	/**
+	 * @param converter the converter
+	 * @return a converter with the current LUT and range of <code>converter</code>
+	 */
+	private static RealLUTConverter<FloatType> copyOf(final RealLUTConverter<FloatType> converter) {
+		return new RealLUTConverter<>(converter.getMin(), converter.getMax(), converter.getLUT());
+	}
+
+	/**
+	 * @param size  the size of level 0
+	 * @param level the level
+	 * @return the size of the level
+	 */
+	private static int levelSize(final int size, final int level) {
+		return ((size - 1) >> level) + 1;
+	}
+
+	/**
+	 * @param level the level
+	 * @param tx    the tile column
+	 * @param ty    the tile row
+	 * @return the key of the tile in {@link #pyramid}
+	 */
+	private static Long tileKey(final int level, final int tx, final int ty) {
+		return (long) level << 48 | (long) ty << 24 | tx;
 	}
 }
@@ -0,0 +1,71 @@
+package flimlib.flimj.ui;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Caches the {@link ImageStats} of images derived from a few data sources (e.g. the intensity map
+ * or the fitted parameters). Each source carries a version number that is bumped whenever its data
+ * changes, and the statistics of an image are gathered at most once per version of its source, on
+ * first request.
+ */
+public class StatsCache {
+
+	/** The data sources images are derived from */
+	public enum Source {
+		INTENSITY, IRF_INTENSITY, RESULTS
+	}
+
+	private static class Entry {
+
+		final long version;
+
+		final ImageStats stats;
+
+		Entry(final long version, final ImageStats stats) {
+			this.version = version;
+			this.stats = stats;
+		}
+	}
+
+	/** The current version of each source */
+	private final long[] versions = new long[Source.values().length];
+
+	private final Map<String, Entry> entries = new HashMap<>();
+
+	/**
+	 * Marks the data of <code>source</code> as changed, which invalidates the statistics of all
+	 * images derived from it.
+	 *
+	 * @param source the source
+	 */
+	public synchronized void invalidate(final Source source) {
+		versions[source.ordinal()]++;
+	}
+
+	/**
+	 * @param source the source
+	 * @return the current version of <code>source</code>
+	 */
+	public synchronized long getVersion(final Source source) {
+		return versions[source.ordinal()];
+	}
+
+	/**
+	 * @param key      identifies the image (and e.g. the pixels counted)
+	 * @param source   the source of the image
+	 * @param gatherer gathers the statistics if they are not known for the current version
+	 * @return the statistics
+	 */
+	public synchronized ImageStats get(final String key, final Source source,
+			final Supplier<ImageStats> gatherer) {
+		final long version = versions[source.ordinal()];
+		Entry entry = entries.get(key);
+		if (entry == null || entry.version != version) {
+			entry = new Entry(version, gatherer.get());
+			entries.put(key, entry);
+		}
+		return entry.stats;
+	}
+}
@@ -0,0 +1,330 @@
+package flimlib.flimj.ui;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+/**
+ * Bins transient and intensity images with a square kernel through summed-area tables (integral
+ * images) over the spatial axes. Once a table is built, the binned value of any pixel takes four
+ * lookups per time bin regardless of the bin radius. Pixels outside of the image count as zero,
+ * same as a zero-padded convolution.
+ * <p>
+ * The table of the intensity image is kept. The table of the transient image (in double, i.e.
+ * twice the size of the image itself) is only built for a chunk of time bins at a time while
+ * binning, so that binning takes little memory beyond that of the binned image. The transient
+ * of a single pixel ({@link #fillTrans}) is served from prefix sums along X of the rows around
+ * it, of which at most {@link #CHUNK_ENTRIES} entries are cached.
+ */
+public class SummedAreaBinner {
+
+	/** Width of the columns processed together when accumulating along Y */
+	private static final int COL_CHUNK = 4096;
+
+	/**
+	 * The number of table entries built at once when binning transients, and of row prefix sum
+	 * entries cached for {@link #fillTrans} (64 MB)
+	 */
+	private static final long CHUNK_ENTRIES = 1L << 23;
+
+	/** The maximum length of an array */
+	private static final long MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+	private final RandomAccessibleInterval<FloatType> trans, intensity;
+
+	/** Indices of the X, Y and lifetime axes */
+	private final int X, Y, L;
+
+	/** Width, height and the number of time bins of the transient image */
+	private final int w, h, nBins;
+
+	/** The summed-area table of the intensity image, lazily built */
+	private double[] intensitySAT;
+
+	/** The maximum number of rows in {@link #rowPrefix} */
+	private final int maxCachedRows;
+
+	/** The prefix sums along X of the transient rows (see {@link #getRowPrefix}) by row */
+	private final Map<Integer, double[]> rowPrefix =
+			new LinkedHashMap<Integer, double[]>(16, 0.75f, true) {
+
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Integer, double[]> eldest) {
+					return size() > maxCachedRows;
+				}
+			};
+
+	/** The binned transient being accumulated by {@link #fillTrans} */
+	private double[] rowSum = new double[0];
+
+	/**
+	 * @param trans     the transient image
+	 * @param intensity the intensity image (same spatial size, singleton lifetime axis)
+	 * @param axisOrder the indices of X, Y and lifetime axes
+	 */
+	public SummedAreaBinner(final RandomAccessibleInterval<FloatType> trans,
+			final RandomAccessibleInterval<FloatType> intensity, final int[] axisOrder) {
+		this.trans = Views.zeroMin(trans);
+		this.intensity = Views.zeroMin(intensity);
+		X = axisOrder[0];
+		Y = axisOrder[1];
+		L = axisOrder[2];
+		w = (int) trans.dimension(X);
+		h = (int) trans.dimension(Y);
+		nBins = (int) trans.dimension(L);
+		final long rowEntries = (w + 1L) * nBins;
+		maxCachedRows = rowEntries > MAX_ARRAY_LENGTH ? 0
+				: (int) Math.min(CHUNK_ENTRIES / rowEntries, h);
+	}
+
+	/**
+	 * @param radius the bin radius (kernel size is 2 * radius + 1)
+	 * @return the binned intensity image
+	 * @throws IllegalStateException if the image is too large to bin
+	 */
+	public Img<FloatType> binIntensity(final int radius) {
+		final long[] dims = dimsOf(intensity);
+		final float[] out = new float[(int) checkLength(dims[0] * dims[1] * dims[2])];
+		boxSum(getIntensitySAT(), 0, 1, out, dims, radius);
+		return ArrayImgs.floats(out, dims);
+	}
+
+	/**
+	 * Bins the transient image a chunk of time bins at a time.
+	 *
+	 * @param radius the bin radius (kernel size is 2 * radius + 1)
+	 * @return the binned transient image, never negative
+	 * @throws IllegalStateException if the image is too large to bin
+	 */
+	public Img<FloatType> binTrans(final int radius) {
+		final long[] dims = dimsOf(trans);
+		final float[] out = new float[(int) checkLength(dims[0] * dims[1] * dims[2])];
+		final long planeEntries = checkLength((w + 1L) * (h + 1L));
+		final int chunk = (int) Math.max(Math.min(CHUNK_ENTRIES / planeEntries, nBins), 1);
+		for (int t0 = 0; t0 < nBins; t0 += chunk) {
+			final int depth = Math.min(chunk, nBins - t0);
+			boxSum(buildSAT(trans, t0, depth), t0, depth, out, dims, radius);
+		}
+		return ArrayImgs.floats(out, dims);
+	}
+
+	/**
+	 * Bins all pixels together (i.e. with an infinite radius). Every pixel gets the same value, so
+	 * the result is just the total intensity broadcast to the shape of the intensity image.
+	 *
+	 * @return the fully binned intensity image
+	 * @throws IllegalStateException if the image is too large to bin
+	 */
+	public Img<FloatType> binIntensityFull() {
+		final double[] sat = getIntensitySAT();
+		final long[] dims = dimsOf(intensity);
+		final float[] out = new float[(int) checkLength(dims[0] * dims[1] * dims[2])];
+		Arrays.fill(out, (float) sat[sat.length - 1]);
+		return ArrayImgs.floats(out, dims);
+	}
+
+	/**
+	 * Loads the binned transient at (x, y) into <code>transArr</code>, same as the pixel of
+	 * {@link #binTrans}. Takes two lookups per time bin and kernel row once the rows are cached,
+	 * so moving along a row or to a nearby row is cheap. Kernels taller than the cache are summed
+	 * directly.
+	 *
+	 * @param transArr the destination of length equal to the number of time bins
+	 * @param x        the x coordinate
+	 * @param y        the y coordinate
+	 * @param radius   the bin radius
+	 */
+	public synchronized void fillTrans(final float[] transArr, final int x, final int y,
+			final int radius) {
+		final int depth = Math.min(transArr.length, nBins);
+		if (rowSum.length < depth)
+			rowSum = new double[depth];
+		Arrays.fill(rowSum, 0, depth, 0);
+		final int xBegin = clamp(x - radius, w);
+		final int xEnd = clamp(x + radius + 1, w);
+		final int yBegin = clamp(y - radius, h);
+		final int yEnd = clamp(y + radius + 1, h);
+
+		if (yEnd - yBegin <= maxCachedRows) {
+			final int x0 = xBegin * nBins;
+			final int x1 = xEnd * nBins;
+			for (int yy = yBegin; yy < yEnd; yy++) {
+				final double[] prefix = getRowPrefix(yy);
+				for (int t = 0; t < depth; t++)
+					rowSum[t] += prefix[x1 + t] - prefix[x0 + t];
+			}
+		} else {
+			final RandomAccess<FloatType> ra = trans.randomAccess();
+			for (int yy = yBegin; yy < yEnd; yy++) {
+				ra.setPosition(yy, Y);
+				for (int xx = xBegin; xx < xEnd; xx++) {
+					ra.setPosition(xx, X);
+					ra.setPosition(0, L);
+					for (int t = 0; t < depth; t++, ra.fwd(L))
+						rowSum[t] += ra.get().getRealDouble();
+				}
+			}
+		}
+		Arrays.fill(transArr, 0);
+		// same clamp as boxSum()
+		for (int t = 0; t < depth; t++)
+			transArr[t] = (float) Math.max(rowSum[t], 0);
+	}
+
+	/**
+	 * Gets (building if not cached) the prefix sums P of the transient row <code>y</code>, where
+	 * P[x * nBins + t] is the sum of the pixels [0, x) of the row at time bin t.
+	 *
+	 * @param y the row
+	 * @return the (w + 1) x nBins prefix sums
+	 */
+	private double[] getRowPrefix(final int y) {
+		double[] prefix = rowPrefix.get(y);
+		if (prefix == null) {
+			prefix = new double[(w + 1) * nBins];
+			final RandomAccess<FloatType> ra = trans.randomAccess();
+			ra.setPosition(y, Y);
+			for (int x = 0; x < w; x++) {
+				ra.setPosition(x, X);
+				ra.setPosition(0, L);
+				final int prev = x * nBins;
+				final int cur = prev + nBins;
+				for (int t = 0; t < nBins; t++, ra.fwd(L))
+					prefix[cur + t] = prefix[prev + t] + ra.get().getRealDouble();
+			}
+			rowPrefix.put(y, prefix);
+		}
+		return prefix;
+	}
+
+	private synchronized double[] getIntensitySAT() {
+		if (intensitySAT == null) {
+			checkLength((w + 1L) * (h + 1L));
+			intensitySAT = buildSAT(intensity, 0, 1);
+		}
+		return intensitySAT;
+	}
+
+	/**
+	 * Builds the table S where S[y][x][t] is the sum of all pixels in [0, x) x [0, y) at time bin
+	 * t0 + t. Entries of each (x, y) are contiguous so that a transient is read in one run. The
+	 * caller makes sure that the table fits in an array.
+	 *
+	 * @param img   the image
+	 * @param t0    the first time bin
+	 * @param depth the number of time bins
+	 * @return the (h + 1) x (w + 1) x depth table
+	 */
+	private double[] buildSAT(final RandomAccessibleInterval<FloatType> img, final int t0,
+			final int depth) {
+		final int stride = (w + 1) * depth;
+		final double[] sat = new double[(h + 1) * stride];
+
+		// prefix sum along X, row by row
+		IntStream.range(0, h).parallel().forEach(y -> {
+			final RandomAccess<FloatType> ra = img.randomAccess();
+			final int row = (y + 1) * stride;
+			ra.setPosition(y, Y);
+			for (int x = 0; x < w; x++) {
+				ra.setPosition(x, X);
+				ra.setPosition(t0, L);
+				final int prev = row + x * depth;
+				final int cur = prev + depth;
+				for (int t = 0; t < depth; t++, ra.fwd(L))
+					sat[cur + t] = sat[prev + t] + ra.get().getRealDouble();
+			}
+		});
+
+		// prefix sum along Y, a chunk of columns at a time
+		final int nChunks = (stride + COL_CHUNK - 1) / COL_CHUNK;
+		IntStream.range(0, nChunks).parallel().forEach(chunk -> {
+			final int from = chunk * COL_CHUNK;
+			final int to = Math.min(from + COL_CHUNK, stride);
+			for (int y = 2; y <= h; y++) {
+				final int row = y * stride;
+				final int above = row - stride;
+				for (int c = from; c < to; c++)
+					sat[row + c] += sat[above + c];
+			}
+		});
+		return sat;
+	}
+
+	/**
+	 * Computes the box sum of every pixel from a summed-area table into time bins
+	 * [t0, t0 + depth) of <code>out</code>.
+	 *
+	 * @param sat    the table
+	 * @param t0     the first time bin of the table
+	 * @param depth  the number of time bins of the table
+	 * @param out    the output image data
+	 * @param dims   the dimensions of the output image
+	 * @param radius the bin radius
+	 */
+	private void boxSum(final double[] sat, final int t0, final int depth, final float[] out,
+			final long[] dims, final int radius) {
+		final int[] steps = {1, (int) dims[0], (int) (dims[0] * dims[1])};
+		final int sx = steps[X];
+		final int sy = steps[Y];
+		final int st = steps[L];
+		final int stride = (w + 1) * depth;
+
+		IntStream.range(0, h).parallel().forEach(y -> {
+			final int y0 = clamp(y - radius, h) * stride;
+			final int y1 = clamp(y + radius + 1, h) * stride;
+			for (int x = 0; x < w; x++) {
+				final int x0 = clamp(x - radius, w) * depth;
+				final int x1 = clamp(x + radius + 1, w) * depth;
+				final int base = y * sy + x * sx + t0 * st;
+				for (int t = 0; t < depth; t++) {
+					final double sum = sat[y1 + x1 + t] - sat[y0 + x1 + t] - sat[y1 + x0 + t]
+							+ sat[y0 + x0 + t];
+					// rounding may leave tiny negative values that break e.g. log() in
+					// GCI_marquardt_compute_fn()
+					out[base + t * st] = (float) Math.max(sum, 0);
+				}
+			}
+		});
+	}
+
+	/**
+	 * @param img the image
+	 * @return the dimensions of <code>img</code>
+	 */
+	private static long[] dimsOf(final RandomAccessibleInterval<FloatType> img) {
+		final long[] dims = new long[img.numDimensions()];
+		img.dimensions(dims);
+		return dims;
+	}
+
+	/**
+	 * @param length the length of an array
+	 * @return <code>length</code>
+	 * @throws IllegalStateException if an array cannot be that long
+	 */
+	private static long checkLength(final long length) {
+		if (length > MAX_ARRAY_LENGTH)
+			throw new IllegalStateException("The image is too large to bin (" + length
+					+ " elements, at most " + MAX_ARRAY_LENGTH + " supported)");
+		return length;
+	}
+
+	/**
+	 * @param v   the value
+	 * @param max the upper bound
+	 * @return v clamped to [0, max]
+	 */
+	private static int clamp(final int v, final int max) {
+		return Math.min(Math.max(v, 0), max);
+	}
+}
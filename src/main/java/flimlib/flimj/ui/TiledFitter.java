@@ -0,0 +1,320 @@
+package flimlib.flimj.ui;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import net.imagej.ops.OpService;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+import flimlib.flimj.FitParams;
+import flimlib.flimj.FitResults;
+
+/**
+ * Fits a transient map by splitting it into spatial tiles that are fitted independently on a
+ * work-stealing pool. Since each pixel is fitted on its own (LMA, Bayes), the assembled result is
+ * identical to that of a single op call over the whole map.
+ */
+public class TiledFitter {
+
+	/** The edge length (in pixels) of a tile */
+	public static final int TILE_SIZE = 32;
+
+	/** The return code of pixels skipped because the fit was cancelled */
+	public static final int RET_NOT_FITTED = -102;
+
+	/**
+	 * Notified once per fitted tile, which batches the per-pixel events of the op.
+	 */
+	public interface TileListener {
+
+		/**
+		 * Called from the worker thread that fitted the tile.
+		 *
+		 * @param tile    the tile interval in the transient map
+		 * @param results the results of the tile (maps are relative to the tile)
+		 */
+		void onTileComplete(Interval tile, FitResults results);
+	}
+
+	private final OpService ops;
+
+	private final ForkJoinPool pool;
+
+	/**
+	 * @param ops         the op service used to fit each tile
+	 * @param parallelism the number of worker threads
+	 */
+	public TiledFitter(final OpService ops, final int parallelism) {
+		this.ops = ops;
+		this.pool = new ForkJoinPool(parallelism);
+	}
+
+	/**
+	 * Determines if the fit of <code>params</code> can be broken into tiles without changing the
+	 * results.
+	 *
+	 * @param fitType the algorithm (the suffix of "flim.fit*")
+	 * @param params  the fitting parameters
+	 * @return <code>true</code> if the fit can be tiled
+	 */
+	public boolean supports(final String fitType, final FitParams<FloatType> params) {
+		// global analysis couples all pixels, and a percentage threshold depends on the
+		// intensity distribution of the whole map
+		if ("Global".equals(fitType) || params.iThreshPercent > 0)
+			return false;
+		final int[] spatial = spatialAxes(params.ltAxis);
+		return params.transMap.dimension(spatial[0])
+				* params.transMap.dimension(spatial[1]) > TILE_SIZE * TILE_SIZE;
+	}
+
+	/**
+	 * Fits <code>params.transMap</code> tile by tile and assembles every per-pixel map the op
+	 * produced (parameters, return codes, intensity, fitted, residuals and chi-squared). Once
+	 * <code>isCancelled</code> returns <code>true</code>, tiles not yet started are skipped: their
+	 * return code is {@link #RET_NOT_FITTED} and their other maps are NaN.
+	 *
+	 * @param fitType     the algorithm (the suffix of "flim.fit*")
+	 * @param params      the fitting parameters
+	 * @param listener    notified of each fitted tile, may be <code>null</code>
+	 * @param isCancelled polled before each tile
+	 * @return the assembled results, or <code>null</code> if no tile was fitted
+	 */
+	public FitResults fit(final String fitType, final FitParams<FloatType> params,
+			final TileListener listener, final BooleanSupplier isCancelled) {
+		final List<Interval> tiles = makeTiles(params.transMap, params.ltAxis);
+		final FitResults[] tileResults = new FitResults[tiles.size()];
+
+		try {
+			pool.submit(new TileTask(fitType, params, tiles, tileResults, listener, isCancelled, 0,
+					tiles.size())).get();
+		} catch (InterruptedException | ExecutionException e) {
+			throw new UIException(e);
+		}
+
+		final long[] dims = new long[params.transMap.numDimensions()];
+		params.transMap.dimensions(dims);
+		FitResults merged = null;
+		for (int i = tileResults.length - 1; i >= 0 && merged == null; i--)
+			if (tileResults[i] != null)
+				merged = tileResults[i].copy();
+		if (merged == null)
+			return null;
+		final long[] origin = new long[dims.length];
+		params.transMap.min(origin);
+		merged.paramMap = assemble(tiles, tileResults, r -> r.paramMap, Double.NaN, dims, origin,
+				params.ltAxis);
+		merged.retCodeMap = assemble(tiles, tileResults, r -> r.retCodeMap, RET_NOT_FITTED, dims,
+				origin, params.ltAxis);
+		merged.intensityMap = assemble(tiles, tileResults, r -> r.intensityMap, Double.NaN, dims,
+				origin, params.ltAxis);
+		merged.fittedMap = assemble(tiles, tileResults, r -> r.fittedMap, Double.NaN, dims, origin,
+				params.ltAxis);
+		merged.residualsMap = assemble(tiles, tileResults, r -> r.residualsMap, Double.NaN, dims,
+				origin, params.ltAxis);
+		merged.chisqMap = assemble(tiles, tileResults, r -> r.chisqMap, Double.NaN, dims, origin,
+				params.ltAxis);
+		return merged;
+	}
+
+	/**
+	 * Shuts down the worker pool.
+	 */
+	public void shutdown() {
+		pool.shutdownNow();
+	}
+
+	/**
+	 * Fits a single tile.
+	 *
+	 * @param fitType the algorithm
+	 * @param params  the fitting parameters of the whole map
+	 * @param tile    the tile interval in <code>params.transMap</code>
+	 * @return the results of the tile
+	 */
+	private FitResults fitTile(final String fitType, final FitParams<FloatType> params,
+			final Interval tile) {
+		final FitParams<FloatType> tileParams = params.copy();
+		// private buffers so that tiles don't step on each other
+		tileParams.trans = params.trans.clone();
+		tileParams.param = params.param.clone();
+		tileParams.paramFree = params.paramFree.clone();
+		// the pool already runs one tile per worker, chunking a tile again would oversubscribe it
+		tileParams.multithread = false;
+		tileParams.transMap = Views.zeroMin(Views.interval(params.transMap, tile));
+		if (params.paramMap != null)
+			tileParams.paramMap = Views.zeroMin(Views.interval(params.paramMap,
+					spanLtAxis(tile, params.paramMap, new long[3], params.ltAxis)));
+
+		// no per-pixel events, progress is reported per tile
+		return (FitResults) ops.run("flim.fit" + fitType, tileParams);
+	}
+
+	/**
+	 * Splits the spatial extent of the transient map into tiles of {@link #TILE_SIZE}. Tiles of
+	 * maps shorter than that are widened to keep the same number of pixels.
+	 *
+	 * @param transMap the transient map
+	 * @param ltAxis   the lifetime axis
+	 * @return the list of tile intervals, each spanning the whole lifetime axis
+	 */
+	private static List<Interval> makeTiles(final RandomAccessibleInterval<FloatType> transMap,
+			final int ltAxis) {
+		final int[] spatial = spatialAxes(ltAxis);
+		final int X = spatial[0];
+		final int Y = spatial[1];
+		final long tileH = Math.min(TILE_SIZE, transMap.dimension(Y));
+		final long tileW = TILE_SIZE * TILE_SIZE / tileH;
+		final List<Interval> tiles = new ArrayList<>();
+		for (long y = transMap.min(Y); y <= transMap.max(Y); y += tileH)
+			for (long x = transMap.min(X); x <= transMap.max(X); x += tileW) {
+				final long[] min = new long[3];
+				final long[] max = new long[3];
+				transMap.min(min);
+				transMap.max(max);
+				min[X] = x;
+				min[Y] = y;
+				max[X] = Math.min(x + tileW - 1, transMap.max(X));
+				max[Y] = Math.min(y + tileH - 1, transMap.max(Y));
+				tiles.add(new FinalInterval(min, max));
+			}
+		return tiles;
+	}
+
+	/**
+	 * Copies the per-tile maps into a map covering the whole dataset.
+	 *
+	 * @param tiles       the tile intervals
+	 * @param tileResults the results of each tile
+	 * @param getter      extracts the map from the results
+	 * @param skipped     the value of the pixels in tiles that were not fitted
+	 * @param dims        the dimensions of the transient map
+	 * @param origin      the min of the transient map
+	 * @param ltAxis      the lifetime axis
+	 * @return the assembled map or <code>null</code> if the op did not produce it
+	 */
+	private static <T extends RealType<T> & NativeType<T>> Img<T> assemble(
+			final List<Interval> tiles, final FitResults[] tileResults,
+			final Function<FitResults, RandomAccessibleInterval<T>> getter, final double skipped,
+			final long[] dims, final long[] origin, final int ltAxis) {
+		RandomAccessibleInterval<T> first = null;
+		for (int i = 0; i < tileResults.length && first == null; i++)
+			if (tileResults[i] != null)
+				first = getter.apply(tileResults[i]);
+		if (first == null)
+			return null;
+
+		final long[] fullDims = dims.clone();
+		fullDims[ltAxis] = first.dimension(ltAxis);
+		final Img<T> full = new ArrayImgFactory<>(Util.getTypeFromInterval(first)).create(fullDims);
+
+		for (int i = 0; i < tiles.size(); i++) {
+			final Cursor<T> dst = Views.flatIterable(
+					Views.interval(full, spanLtAxis(tiles.get(i), full, origin, ltAxis))).cursor();
+			if (tileResults[i] == null) {
+				while (dst.hasNext())
+					dst.next().setReal(skipped);
+				continue;
+			}
+			final Cursor<T> src = Views.flatIterable(getter.apply(tileResults[i])).cursor();
+			while (src.hasNext())
+				dst.next().set(src.next());
+		}
+		return full;
+	}
+
+	/**
+	 * @param tile   the tile interval
+	 * @param target the image whose lifetime axis range is used
+	 * @param origin the offset subtracted from the spatial coordinates of <code>tile</code>
+	 * @param ltAxis the lifetime axis
+	 * @return the tile interval stretched to cover the lifetime axis of <code>target</code>
+	 */
+	private static Interval spanLtAxis(final Interval tile, final Interval target,
+			final long[] origin, final int ltAxis) {
+		final long[] min = new long[tile.numDimensions()];
+		final long[] max = new long[tile.numDimensions()];
+		for (int d = 0; d < min.length; d++) {
+			min[d] = tile.min(d) - origin[d];
+			max[d] = tile.max(d) - origin[d];
+		}
+		min[ltAxis] = target.min(ltAxis);
+		max[ltAxis] = target.max(ltAxis);
+		return new FinalInterval(min, max);
+	}
+
+	/**
+	 * @param ltAxis the lifetime axis
+	 * @return the indices of the X and Y axes
+	 */
+	private static int[] spatialAxes(final int ltAxis) {
+		long[] perm = FitProcessor.swapOutLtAxis(new long[] {0, 1, 2}, ltAxis);
+		return new int[] {(int) perm[0], (int) perm[1]};
+	}
+
+	/**
+	 * Recursively halves the range of tiles so that idle workers can steal the other half, which
+	 * keeps the cores busy even when some tiles (e.g. dim ones) take longer to fit.
+	 */
+	private class TileTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String fitType;
+
+		private final FitParams<FloatType> params;
+
+		private final List<Interval> tiles;
+
+		private final FitResults[] tileResults;
+
+		private final TileListener listener;
+
+		private final BooleanSupplier isCancelled;
+
+		private final int lo, hi;
+
+		TileTask(final String fitType, final FitParams<FloatType> params, final List<Interval> tiles,
+				final FitResults[] tileResults, final TileListener listener,
+				final BooleanSupplier isCancelled, final int lo, final int hi) {
+			this.fitType = fitType;
+			this.params = params;
+			this.tiles = tiles;
+			this.tileResults = tileResults;
+			this.listener = listener;
+			this.isCancelled = isCancelled;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo == 1) {
+				if (isCancelled.getAsBoolean())
+					return;
+				tileResults[lo] = fitTile(fitType, params, tiles.get(lo));
+				if (listener != null)
+					listener.onTileComplete(tiles.get(lo), tileResults[lo]);
+				return;
+			}
+			final int mid = (lo + hi) >>> 1;
+			invokeAll(
+					new TileTask(fitType, params, tiles, tileResults, listener, isCancelled, lo, mid),
+					new TileTask(fitType, params, tiles, tileResults, listener, isCancelled, mid, hi));
+		}
+	}
+}
@@ -0,0 +1,324 @@
+package flimlib.flimj.ui;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+import java.util.function.LongBinaryOperator;
+import java.util.stream.IntStream;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * Groups the pixels of a transient map by their decay so that each distinct decay needs to be
+ * fitted only once. The distinct decays are packed into a single-row transient map, and maps
+ * fitted from it are scattered back to the original pixels with {@link #scatter}.
+ */
+public class UniqueDecays implements PackedTrans {
+
+	/** Grouping is worthwhile if at least 1 / this of the pixels have a duplicate decay */
+	private static final int MIN_DUPLICATE_FRACTION = 8;
+
+	/** The number of pixels grouped before deciding whether to group the whole map */
+	static final int SAMPLE_PIXELS = 1 << 14;
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+	/** FNV-1a over the bits of each value */
+	private static final LongBinaryOperator FNV_1A = (hash, bits) -> (hash ^ bits) * 0x100000001b3L;
+
+	/** Indices of the X, Y and lifetime axes */
+	private final int X, Y, L;
+
+	/** Width and height of the original map */
+	private final int w, h;
+
+	/** The index of the distinct decay of each pixel (in y * w + x order) */
+	private final int[] pixelToUnique;
+
+	/** The distinct decays in a nUnique x 1 map */
+	private final Img<FloatType> uniqueTrans;
+
+	/** Pixels grouped by distinct decay: those of group u are in [groupStart[u], groupStart[u + 1]) */
+	private int[] groupStart, groupPixels;
+
+	private UniqueDecays(final int[] axisOrder, final int w, final int h,
+			final int[] pixelToUnique, final Img<FloatType> uniqueTrans) {
+		X = axisOrder[0];
+		Y = axisOrder[1];
+		L = axisOrder[2];
+		this.w = w;
+		this.h = h;
+		this.pixelToUnique = pixelToUnique;
+		this.uniqueTrans = uniqueTrans;
+	}
+
+	/**
+	 * Groups the pixels of <code>transMap</code> by their decays. The first
+	 * {@link #SAMPLE_PIXELS} pixels are grouped first, so that maps with (almost) no duplicates
+	 * are turned down without hashing every decay.
+	 *
+	 * @param transMap  the transient map
+	 * @param axisOrder the indices of X, Y and lifetime axes
+	 * @return the grouping, or <code>null</code> if too few pixels share a decay for grouping to
+	 *         pay off
+	 */
+	public static UniqueDecays find(final RandomAccessibleInterval<FloatType> transMap,
+			final int[] axisOrder) {
+		return find(transMap, axisOrder, FNV_1A);
+	}
+
+	/**
+	 * @param transMap  the transient map
+	 * @param axisOrder the indices of X, Y and lifetime axes
+	 * @param hashStep  folds the bits of the next value of a decay into its hash
+	 * @return the grouping, or <code>null</code> if too few pixels share a decay or if two
+	 *         different decays have the same hash
+	 * @see #find(RandomAccessibleInterval, int[])
+	 */
+	static UniqueDecays find(final RandomAccessibleInterval<FloatType> transMap,
+			final int[] axisOrder, final LongBinaryOperator hashStep) {
+		final RandomAccessibleInterval<FloatType> trans = Views.zeroMin(transMap);
+		final int X = axisOrder[0];
+		final int Y = axisOrder[1];
+		final int L = axisOrder[2];
+		final int w = (int) trans.dimension(X);
+		final int h = (int) trans.dimension(Y);
+		final int nBins = (int) trans.dimension(L);
+		final int nPix = w * h;
+
+		// most maps have next to no duplicates, which shows in the first pixels already
+		final int nSample = Math.min(nPix, SAMPLE_PIXELS);
+		final long[] sampleHashes = new long[nSample];
+		final RandomAccess<FloatType> sampleRA = trans.randomAccess();
+		for (int i = 0; i < nSample; i++)
+			sampleHashes[i] = hash(sampleRA, i % w, i / w, X, Y, L, nBins, hashStep);
+		if (nSample < nPix && group(sampleHashes, new int[nSample], new int[nSample]) < 0)
+			return null;
+
+		// hash every decay
+		final long[] hashes;
+		if (nSample == nPix)
+			hashes = sampleHashes;
+		else {
+			hashes = new long[nPix];
+			IntStream.range(0, h).parallel().forEach(y -> {
+				final RandomAccess<FloatType> ra = trans.randomAccess();
+				for (int x = 0; x < w; x++)
+					hashes[y * w + x] = hash(ra, x, y, X, Y, L, nBins, hashStep);
+			});
+		}
+
+		final int[] pixelToUnique = new int[nPix];
+		final int[] representative = new int[maxUnique(nPix)];
+		final int nUnique = group(hashes, pixelToUnique, representative);
+		if (nUnique < 0)
+			return null;
+
+		// make sure no two different decays have collided
+		final AtomicBoolean collided = new AtomicBoolean();
+		IntStream.range(0, h).parallel().forEach(y -> {
+			final RandomAccess<FloatType> ra = trans.randomAccess();
+			final RandomAccess<FloatType> repRA = trans.randomAccess();
+			ra.setPosition(y, Y);
+			for (int x = 0; x < w && !collided.get(); x++) {
+				final int rep = representative[pixelToUnique[y * w + x]];
+				if (rep == y * w + x)
+					continue;
+				ra.setPosition(x, X);
+				ra.setPosition(0, L);
+				repRA.setPosition(rep % w, X);
+				repRA.setPosition(rep / w, Y);
+				repRA.setPosition(0, L);
+				for (int t = 0; t < nBins; t++, ra.fwd(L), repRA.fwd(L))
+					if (Float.floatToIntBits(ra.get().get()) != Float
+							.floatToIntBits(repRA.get().get())) {
+						collided.set(true);
+						break;
+					}
+			}
+		});
+		if (collided.get())
+			return null;
+
+		// pack the distinct decays into one row
+		return new UniqueDecays(axisOrder, w, h, pixelToUnique,
+				PixelSubset.pack(trans, axisOrder, representative, nUnique));
+	}
+
+	/**
+	 * @param nPix the number of pixels
+	 * @return the most distinct decays among <code>nPix</code> pixels worth grouping
+	 */
+	static int maxUnique(final int nPix) {
+		return nPix - nPix / MIN_DUPLICATE_FRACTION;
+	}
+
+	/**
+	 * @param ra       the access to the transient map
+	 * @param x        the x coordinate of the pixel
+	 * @param y        the y coordinate of the pixel
+	 * @param X        the X axis
+	 * @param Y        the Y axis
+	 * @param L        the lifetime axis
+	 * @param nBins    the number of time bins
+	 * @param hashStep folds the bits of the next value into the hash
+	 * @return the hash of the decay of the pixel
+	 */
+	private static long hash(final RandomAccess<FloatType> ra, final int x, final int y,
+			final int X, final int Y, final int L, final int nBins,
+			final LongBinaryOperator hashStep) {
+		ra.setPosition(x, X);
+		ra.setPosition(y, Y);
+		ra.setPosition(0, L);
+		long hash = FNV_OFFSET_BASIS;
+		for (int t = 0; t < nBins; t++, ra.fwd(L))
+			hash = hashStep.applyAsLong(hash, Float.floatToIntBits(ra.get().get()));
+		return hash;
+	}
+
+	/**
+	 * Assigns group indices to the hashes in order of first appearance, giving up once there
+	 * are more than {@link #maxUnique} of them.
+	 *
+	 * @param hashes         the hash of each pixel
+	 * @param pixelToUnique  receives the group index of each pixel
+	 * @param representative receives the first pixel of each group, at least
+	 *                       {@link #maxUnique} long
+	 * @return the number of groups, or -1 if there are too many
+	 */
+	private static int group(final long[] hashes, final int[] pixelToUnique,
+			final int[] representative) {
+		final int maxUnique = maxUnique(hashes.length);
+		// open addressing with linear probing, at most half full
+		final int capacity = Integer.highestOneBit(Math.max(maxUnique, 1)) << 2;
+		final int mask = capacity - 1;
+		final long[] keys = new long[capacity];
+		final int[] groups = new int[capacity];
+		Arrays.fill(groups, -1);
+		int nUnique = 0;
+		for (int i = 0; i < hashes.length; i++) {
+			final long key = hashes[i];
+			int slot = (int) ((key * 0x9e3779b97f4a7c15L) >>> 32) & mask;
+			while (groups[slot] >= 0 && keys[slot] != key)
+				slot = (slot + 1) & mask;
+			if (groups[slot] < 0) {
+				if (nUnique == maxUnique)
+					return -1;
+				keys[slot] = key;
+				groups[slot] = nUnique;
+				representative[nUnique++] = i;
+			}
+			pixelToUnique[i] = groups[slot];
+		}
+		return nUnique;
+	}
+
+	/**
+	 * Makes a grouping where all pixels of a w x h map share the same decay.
+	 *
+	 * @param trans     the shared decay
+	 * @param w         the width of the map
+	 * @param h         the height of the map
+	 * @param axisOrder the indices of X, Y and lifetime axes
+	 * @return the grouping
+	 */
+	public static UniqueDecays broadcast(final float[] trans, final int w, final int h,
+			final int[] axisOrder) {
+		final Img<FloatType> uniqueTrans = ArrayImgs.floats(trans.clone(),
+				FitProcessor.swapInLtAxis(new long[] {1, 1, trans.length}, axisOrder[2]));
+		return new UniqueDecays(axisOrder, w, h, new int[w * h], uniqueTrans);
+	}
+
+	/**
+	 * @return the distinct decays in a single-row transient map
+	 */
+	@Override
+	public Img<FloatType> getTrans() {
+		return uniqueTrans;
+	}
+
+	/**
+	 * @return the number of distinct decays
+	 */
+	public int size() {
+		return (int) uniqueTrans.dimension(X);
+	}
+
+	/**
+	 * Calls <code>action</code> with the index (y * w + x) of every pixel having the
+	 * <code>u</code>-th distinct decay.
+	 *
+	 * @param u      the index of the distinct decay
+	 * @param action the action
+	 */
+	@Override
+	public void forEachPixel(final int u, final IntConsumer action) {
+		buildGroups();
+		for (int i = groupStart[u]; i < groupStart[u + 1]; i++)
+			action.accept(groupPixels[i]);
+	}
+
+	/**
+	 * Inverts {@link #pixelToUnique} with a counting sort.
+	 */
+	private synchronized void buildGroups() {
+		if (groupPixels != null)
+			return;
+		final int[] start = new int[size() + 1];
+		for (final int u : pixelToUnique)
+			start[u + 1]++;
+		for (int u = 0; u < size(); u++)
+			start[u + 1] += start[u];
+		final int[] next = Arrays.copyOf(start, size());
+		final int[] pixels = new int[pixelToUnique.length];
+		for (int i = 0; i < pixelToUnique.length; i++)
+			pixels[next[pixelToUnique[i]]++] = i;
+		groupStart = start;
+		groupPixels = pixels;
+	}
+
+	/**
+	 * Expands a map fitted from {@link #getTrans()} to the original pixels.
+	 *
+	 * @param <T>       the pixel type
+	 * @param uniqueMap the map with one entry per distinct decay (e.g. paramMap)
+	 * @return the map with one entry per pixel, or <code>null</code> if <code>uniqueMap</code> is
+	 *         <code>null</code>
+	 */
+	public <T extends NativeType<T>> Img<T> scatter(final RandomAccessibleInterval<T> uniqueMap) {
+		if (uniqueMap == null)
+			return null;
+
+		final long[] dims = new long[3];
+		dims[X] = w;
+		dims[Y] = h;
+		dims[L] = uniqueMap.dimension(L);
+		final Img<T> full =
+				new ArrayImgFactory<>(Util.getTypeFromInterval(uniqueMap)).create(dims);
+		final int depth = (int) dims[L];
+
+		IntStream.range(0, h).parallel().forEach(y -> {
+			final RandomAccess<T> src = Views.zeroMin(uniqueMap).randomAccess();
+			final RandomAccess<T> dst = full.randomAccess();
+			src.setPosition(0, Y);
+			dst.setPosition(y, Y);
+			for (int x = 0; x < w; x++) {
+				src.setPosition(pixelToUnique[y * w + x], X);
+				src.setPosition(0, L);
+				dst.setPosition(x, X);
+				dst.setPosition(0, L);
+				for (int l = 0; l < depth; l++, src.fwd(L), dst.fwd(L))
+					dst.get().set(src.get());
+			}
+		});
+		return full;
+	}
+}
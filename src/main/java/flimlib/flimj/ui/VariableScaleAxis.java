@@ -1,10 +1,14 @@
 package flimlib.flimj.ui;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import javafx.animation.KeyFrame;
 import javafx.animation.KeyValue;
 import javafx.animation.Timeline;
+import javafx.beans.InvalidationListener;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.BooleanPropertyBase;
 import javafx.beans.property.DoubleProperty;
@@ -19,6 +23,11 @@ import javafx.util.converter.NumberStringConverter;
 /**
  * A variable (log/linear) scale axis implementation for JavaFX 2 charts.
  * <p>
+ * Tick values, minor tick marks, label sizes and auto ranged ranges are cached, so that laying out
+ * the axis again with unchanged data, length and scale does little work. Range changes are animated
+ * unless {@link #setAnimated animation} is turned off or they follow each other closer than the
+ * animation lasts (e.g. during a live preview), in which case the axis jumps to the new range.
+ * <p>
  * Inspired by Kevin Senechal (kevinsdooapp &lt;kevin.senechal@dooapp.com &gt;)
  * 
  * @author Dasong Gao
@@ -54,6 +63,9 @@ public class VariableScaleAxis extends ValueAxis<Number> {
 	/** The duration of animation in ms */
 	private static final double ANIMATION_TIME = 700;
 
+	/** The maximum number of label sizes cached */
+	private static final int MAX_CACHED_LABEL_SIZES = 512;
+
 	/** The timeline used in animation */
 	private final Timeline animationTimeline = new Timeline();
 
@@ -72,7 +84,8 @@ public class VariableScaleAxis extends ValueAxis<Number> {
 		protected void invalidated() {
 			// This will effect layout if we are auto ranging
 			if (isAutoRanging()) {
-				invalidateRange(data == null ? new ArrayList<>() : data);
+				updateDataRange();
+				VariableScaleAxis.super.invalidateRange(Collections.emptyList());
 				requestAxisLayout();
 			}
 		}
@@ -94,12 +107,49 @@ public class VariableScaleAxis extends ValueAxis<Number> {
 	/** The recorded min and max (may be log values) of data */
 	private double dataMinValue, dataMaxValue;
 
-	/** Last data series used to auto range the axis */
-	private List<Number> data;
+	/** The min, smallest positive and max value of the data last used to auto range the axis */
+	private double extentMin = Double.NaN, extentMinPositive = Double.NaN,
+			extentMax = Double.NaN;
 
 	/** The default label formatter */
 	private StringConverter<Number> defaultFormatter = new NumberStringConverter();
 
+	/** The time (ns) of the last range change */
+	private long lastRangeChangeTime = System.nanoTime();
+
+	/** The arguments and result of the last {@link #autoRange} */
+	private double autoRangeMin = Double.NaN, autoRangeMax, autoRangeLength, autoRangeLabelSize;
+
+	private int autoRangeMinorTickCount;
+
+	private Side autoRangeSide;
+
+	private AxisRange autoRangeResult;
+
+	/** The last tick values and the range and scale they are calculated for */
+	private List<Number> tickValues;
+
+	private AxisRange tickValuesRange;
+
+	private boolean tickValuesLogScale;
+
+	/** The last minor tick marks and the (display) bounds, tick unit and scale they are for */
+	private List<Number> minorTickMarks;
+
+	private double minorTickLowerBound, minorTickUpperBound, minorTickUnit;
+
+	private int minorTickCount;
+
+	private boolean minorTickLogScale;
+
+	/** The sizes of tick labels by value (w.r.t. the current font, rotation and formatter) */
+	private final Map<Double, Dimension2D> labelSizes = new HashMap<>();
+
+	/** The lower bound and its value in axis bounds space (see {@link #toBnd}) */
+	private double bndLowerBound = Double.NaN, bndLowerBoundValue;
+
+	private boolean bndLowerBoundLogScale;
+
 	/**
 	 * Creates a autoranging log axis.
 	 */
@@ -157,6 +207,9 @@ public class VariableScaleAxis extends ValueAxis<Number> {
 	@Override
 	protected List<Number> calculateTickValues(double length, Object range) {
 		final AxisRange rangeProps = (AxisRange) range;
+		if (rangeProps == tickValuesRange && getLogScale() == tickValuesLogScale) {
+			return tickValues;
+		}
 		final double lowerBound = rangeProps.lowerBound;
 		final double upperBound = rangeProps.upperBound;
 		final double tickUnit = rangeProps.tickUnit;
@@ -190,6 +243,9 @@ public class VariableScaleAxis extends ValueAxis<Number> {
 			}
 			tickValues.add(toDisp(upperBound));
 		}
+		this.tickValues = tickValues;
+		tickValuesRange = rangeProps;
+		tickValuesLogScale = getLogScale();
 		return tickValues;
 	}
 
@@ -200,12 +256,25 @@ public class VariableScaleAxis extends ValueAxis<Number> {
 	 */
 	@Override
 	protected List<Number> calculateMinorTickMarks() {
+		final boolean logScale = getLogScale();
+		if (minorTickMarks != null && getLowerBound() == minorTickLowerBound
+				&& getUpperBound() == minorTickUpperBound && getTickUnit() == minorTickUnit
+				&& getMinorTickCount() == minorTickCount && logScale == minorTickLogScale) {
+			return minorTickMarks;
+		}
+		minorTickLowerBound = getLowerBound();
+		minorTickUpperBound = getUpperBound();
+		minorTickUnit = getTickUnit();
+		minorTickCount = getMinorTickCount();
+		minorTickLogScale = logScale;
+
 		final double lowerBound = toBnd(getLowerBound());
 		final double upperBound = toBnd(getUpperBound());
 		final double tickUnit = toBnd(getTickUnit());
 		final int nMinorTick = Math.max(1, getMinorTickCount());
 
 		final List<Number> minorTickMarks = new ArrayList<>();
+		this.minorTickMarks = minorTickMarks;
 		if (tickUnit > 0) {
 			if (((upperBound - lowerBound) / tickUnit * nMinorTick) > 10000) {
 				// This is a ridiculous amount of major tick marks, something has probably gone
@@ -286,8 +355,13 @@ public class VariableScaleAxis extends ValueAxis<Number> {
 			setTickUnit(tickUnit);
 			setScale(scale);
 
+			// jump to the range if it changes too often to follow
+			final long now = System.nanoTime();
+			animate &= now - lastRangeChangeTime > ANIMATION_TIME * 1e6;
+			lastRangeChangeTime = now;
+
+			animationTimeline.stop();
 			if (animate) {
-				animationTimeline.stop();
 				// NB: The original implementation uses currentLowerBound and scale to map
 				// display positions. Here we introduce transitionBlending to generate a even
 				// smoother transition. Useful when switching axis scale.
@@ -323,19 +397,39 @@ public class VariableScaleAxis extends ValueAxis<Number> {
 	 */
 	@Override
 	public double getDisplayPosition(Number value) {
-		final double newValue = value.doubleValue();
-		final double lowerBound = currentLowerBound.get();
-		final double newDelta = toBnd(newValue) - toBnd(lowerBound);
+		return getDisplayPosition(value.doubleValue());
+	}
 
-		// find position in [lowerBound upperBound] in the previous range
-		double oldDelta = newDelta;
-		if (lastRange != null) {
-			oldDelta = lastRange.logScale && newValue > 0
-					? Math.log10(newValue) - Math.log10(Math.max(lowerBound, 1e-10))
-					: newValue - lowerBound;
+	/**
+	 * Gets the display position along this axis for a given value without boxing it. Returns NaN
+	 * if the axis has not been laid out yet.
+	 *
+	 * @param newValue the data value
+	 * @return the display position
+	 * @see #getDisplayPosition(Number)
+	 */
+	public double getDisplayPosition(double newValue) {
+		if (getRange() == null) {
+			return Double.NaN;
 		}
+		final double lowerBound = currentLowerBound.get();
+		final boolean logScale = getLogScale();
+		if (lowerBound != bndLowerBound || logScale != bndLowerBoundLogScale) {
+			bndLowerBound = lowerBound;
+			bndLowerBoundLogScale = logScale;
+			bndLowerBoundValue = toBnd(lowerBound);
+		}
+		final double newDelta = toBnd(newValue) - bndLowerBoundValue;
 
 		final double blending = transitionBlending.get();
+		if (blending >= 1 || lastRange == null) {
+			return getRange().offset + newDelta * getScale();
+		}
+
+		// find position in [lowerBound upperBound] in the previous range
+		final double oldDelta = lastRange.logScale && newValue > 0
+				? Math.log10(newValue) - Math.log10(Math.max(lowerBound, 1e-10))
+				: newValue - lowerBound;
 		final double delta = oldDelta * (1 - blending) + newDelta * blending;
 		return getRange().offset + delta * getScale();
 	}
@@ -350,10 +444,23 @@ public class VariableScaleAxis extends ValueAxis<Number> {
 		final boolean logScale = getLogScale();
 
 		// xxxValue are short-circuited because they are not visible. See #invalidateRange
-		minValue = logScale ? Math.log10(dataMinValue) : dataMinValue;
-		maxValue = logScale ? Math.log10(dataMaxValue) : dataMaxValue;
+		minValue = dataMinValue;
+		maxValue = dataMaxValue;
 
 		final Side side = getSide();
+		if (autoRangeResult != null && minValue == autoRangeMin && maxValue == autoRangeMax
+				&& length == autoRangeLength && labelSize == autoRangeLabelSize
+				&& getMinorTickCount() == autoRangeMinorTickCount && side == autoRangeSide
+				&& logScale == autoRangeResult.logScale) {
+			return autoRangeResult;
+		}
+		autoRangeMin = minValue;
+		autoRangeMax = maxValue;
+		autoRangeLength = length;
+		autoRangeLabelSize = labelSize;
+		autoRangeMinorTickCount = getMinorTickCount();
+		autoRangeSide = side;
+
 		// calculate the number of tick-marks we can fit in the given length
 		// can never have less than 2 tick marks one for each end
 		final int numOfTickMarks = Math.max((int) Math.floor(length / labelSize), 2);
@@ -460,8 +567,9 @@ public class VariableScaleAxis extends ValueAxis<Number> {
 		final double newScale = calculateNewScale(length, minRounded, maxRounded);
 		final double newOffset = getSide().isVertical() ? length : 0;
 		// return new range
-		return new AxisRange(minRounded, maxRounded, tickUnitRounded, newOffset, newScale,
-				logScale);
+		autoRangeResult = new AxisRange(minRounded, maxRounded, tickUnitRounded, newOffset,
+				newScale, logScale);
+		return autoRangeResult;
 	}
 
 	/**
@@ -471,33 +579,70 @@ public class VariableScaleAxis extends ValueAxis<Number> {
 	 */
 	@Override
 	public void invalidateRange(List<Number> data) {
-		// save data in case axis scale changes (no new data feed)
-		this.data = data;
-		if (data.isEmpty()) {
-			dataMinValue = getLowerBound();
-			dataMaxValue = getUpperBound();
-		} else {
-			dataMinValue = Double.POSITIVE_INFINITY;
-			dataMaxValue = Double.NEGATIVE_INFINITY;
-		}
-		final boolean positiveOnly = getLogScale();
-		for (Number dataValue : data) {
-			if (!positiveOnly || dataValue.doubleValue() > 0) {
-				dataMinValue = Math.min(dataMinValue, dataValue.doubleValue());
-				dataMaxValue = Math.max(dataMaxValue, dataValue.doubleValue());
+		// NB: an empty list (e.g. from a chart without series) keeps the extent last set, so that
+		// data drawn outside of the chart (see PlotCanvas) can range the axis
+		if (!data.isEmpty()) {
+			extentMin = extentMinPositive = Double.POSITIVE_INFINITY;
+			extentMax = Double.NEGATIVE_INFINITY;
+			for (Number dataValue : data) {
+				final double value = dataValue.doubleValue();
+				extentMin = Math.min(extentMin, value);
+				extentMax = Math.max(extentMax, value);
+				if (value > 0) {
+					extentMinPositive = Math.min(extentMinPositive, value);
+				}
 			}
 		}
-		if (!Double.isFinite(dataMinValue) || !Double.isFinite(dataMaxValue)) {
+		updateDataRange();
+		super.invalidateRange(data);
+	}
+
+	/**
+	 * Sets the extent of the data to auto range the axis for. Used when the data is not plotted as
+	 * series of the chart. Does nothing if the extent is unchanged.
+	 *
+	 * @param min         the minimum value
+	 * @param minPositive the minimum positive value (used in log scale)
+	 * @param max         the maximum value
+	 */
+	public void setDataExtent(double min, double minPositive, double max) {
+		if (Double.compare(min, extentMin) == 0 && Double.compare(max, extentMax) == 0
+				&& Double.compare(minPositive, extentMinPositive) == 0) {
+			return;
+		}
+		extentMin = min;
+		extentMinPositive = minPositive;
+		extentMax = max;
+		updateDataRange();
+		super.invalidateRange(Collections.emptyList());
+	}
+
+	/**
+	 * Updates the recorded min and max from the extent of the data w.r.t. the current scale, so
+	 * that they are transformed only once per change of data or scale.
+	 */
+	private void updateDataRange() {
+		dataMinValue = getLogScale() ? extentMinPositive : extentMin;
+		dataMaxValue = extentMax;
+		if (!Double.isFinite(dataMinValue) || !Double.isFinite(dataMaxValue)
+				|| dataMinValue > dataMaxValue) {
 			dataMinValue = getLowerBound();
 			dataMaxValue = getUpperBound();
 		}
-		super.invalidateRange(data);
+		dataMinValue = toBnd(dataMinValue);
+		dataMaxValue = toBnd(dataMaxValue);
 	}
 
 	private void init() {
 		// bind scale to upper class scale property to make it writable
 		scaleProperty().addListener((obs, oldVal, newVal) -> scale.set(newVal.doubleValue()));
 		scale.addListener((obs, oldVal, newVal) -> setScale(newVal.doubleValue()));
+
+		// label sizes change with how labels are drawn
+		final InvalidationListener labelListener = obs -> labelSizes.clear();
+		tickLabelFontProperty().addListener(labelListener);
+		tickLabelRotationProperty().addListener(labelListener);
+		tickLabelFormatterProperty().addListener(labelListener);
 	}
 
 	/**
@@ -551,6 +696,14 @@ public class VariableScaleAxis extends ValueAxis<Number> {
 	 * @return size of tick mark label for given value
 	 */
 	private Dimension2D measureTickMarkSize(Number value, double rotation, String numFormatter) {
+		final Double key = value.doubleValue();
+		Dimension2D size = labelSizes.get(key);
+		if (size != null) {
+			return size;
+		}
+		if (labelSizes.size() >= MAX_CACHED_LABEL_SIZES) {
+			labelSizes.clear();
+		}
 		String labelText;
 		StringConverter<Number> formatter = getTickLabelFormatter();
 		if (formatter == null)
@@ -560,6 +713,8 @@ public class VariableScaleAxis extends ValueAxis<Number> {
 		// } else {
 		labelText = formatter.toString(value);
 		// }
-		return measureTickMarkLabelSize(labelText, rotation);
+		size = measureTickMarkLabelSize(labelText, rotation);
+		labelSizes.put(key, size);
+		return size;
 	}
 }
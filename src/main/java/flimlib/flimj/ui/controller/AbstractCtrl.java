@@ -1,6 +1,10 @@
 package flimlib.flimj.ui.controller;
 
 import java.io.IOException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
 import org.scijava.log.LogService;
 import org.scijava.object.ObjectService;
 import org.scijava.ui.UIService;
@@ -10,7 +14,9 @@ import net.imagej.ops.OpService;
 import flimlib.flimj.FitParams;
 import flimlib.flimj.FitResults;
 import flimlib.flimj.ui.FitProcessor;
+import flimlib.flimj.ui.FitProcessor.Change;
 import io.scif.services.DatasetIOService;
+import net.imglib2.Interval;
 import net.imglib2.type.numeric.real.FloatType;
 
 /**
@@ -63,6 +69,28 @@ public abstract class AbstractCtrl {
 		blockUpdate = false;
 	}
 
+	/**
+	 * The kinds of changes that affect what the controller shows. The controller is only
+	 * refreshed if any of them has happened since the last refresh.
+	 *
+	 * @return the changes the controller depends on (all by default)
+	 */
+	public Set<Change> getDependencies() {
+		return EnumSet.allOf(Change.class);
+	}
+
+	/**
+	 * Called by the fit processor while the dataset is being fitted to notify the controller that
+	 * regions of the result maps have been updated.
+	 *
+	 * @param dirty the updated regions in (x, y) coordinates of the preview images
+	 */
+	public void requestTileRefresh(List<Interval> dirty) {
+		blockUpdate = true;
+		refreshTiles(dirty);
+		blockUpdate = false;
+	}
+
 	/**
 	 * Release the reources occupied by fields in the controller (e.g. {@link #fp}).
 	 */
@@ -145,14 +173,25 @@ public abstract class AbstractCtrl {
 
 	/**
 	 * Called by the controller to notify the fit processor to perform a fit and other controllers
-	 * to update themselves based on the fit results.
+	 * to update themselves based on the fit results. The fit runs in the background and the
+	 * controllers are refreshed once the results of the newest request are available.
 	 */
 	protected void requestUpdate() {
+		requestUpdate(Change.PARAMS);
+	}
+
+	/**
+	 * Same as {@link #requestUpdate()}, but also records what has changed so that only the
+	 * controllers depending on it are refreshed.
+	 *
+	 * @param changed the changes
+	 */
+	protected void requestUpdate(Change... changed) {
 		if (blockUpdate) {
 			return;
 		}
-		fp.updateFit();
-		fp.refreshControllers();
+		fp.markChanged(changed);
+		fp.requestPreviewFit();
 	}
 
 	/**
@@ -165,4 +204,13 @@ public abstract class AbstractCtrl {
 	protected void refresh(FitParams<FloatType> params, FitResults results) {
 
 	}
+
+	/**
+	 * The callback called when regions of the result maps have been updated during a dataset fit.
+	 *
+	 * @param dirty the updated regions in (x, y) coordinates of the preview images
+	 */
+	protected void refreshTiles(List<Interval> dirty) {
+
+	}
 }
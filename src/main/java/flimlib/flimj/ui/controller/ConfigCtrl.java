@@ -6,6 +6,8 @@ import java.io.File;
 import java.nio.file.Files;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
 import org.scijava.widget.FileWidget;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
@@ -13,6 +15,7 @@ import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import flimlib.flimj.FitParams;
 import flimlib.flimj.ui.controls.NumericSpinner;
+import flimlib.flimj.ui.FitProcessor.Change;
 import flimlib.flimj.ui.FitProcessor.FitType;
 import net.imglib2.type.numeric.real.FloatType;
 
@@ -103,6 +106,12 @@ public class ConfigCtrl extends AbstractCtrl {
 
 	}
 
+	@Override
+	public Set<Change> getDependencies() {
+		// nothing to refresh
+		return EnumSet.noneOf(Change.class);
+	}
+
     private static String jsonPrefix(String fieldName){
         String fieldString = String.format("  \"%s\": ", fieldName);
         return "{\n" + fieldString;
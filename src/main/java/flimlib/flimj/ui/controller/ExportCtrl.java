@@ -4,7 +4,9 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import org.controlsfx.control.CheckComboBox;
 import org.controlsfx.control.IndexedCheckModel;
 import org.scijava.widget.FileWidget;
@@ -17,6 +19,8 @@ import net.imagej.ImgPlus;
 import flimlib.flimj.FitParams;
 import flimlib.flimj.FitResults;
 import flimlib.flimj.ui.FitProcessor;
+import flimlib.flimj.ui.FitProcessor.Change;
+import flimlib.flimj.ui.ImageStats;
 import flimlib.flimj.ui.Utils;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.img.Img;
@@ -67,12 +71,13 @@ public class ExportCtrl extends AbstractCtrl {
 					// set bounds and LUT
 					if ("Intensity".equals(option) || "IRF Intensity".equals(option)) {
 						imgp.setChannelMinimum(0, 0);
-						imgp.setChannelMaximum(0, getOps().stats().max(img).getRealDouble());
+						imgp.setChannelMaximum(0, fp.getStats(option, false).getMax());
 					} else {
 						imgp.initializeColorTables(1);
 						imgp.setColorTable(Utils.LIFETIME_LUT, 0);
-						imgp.setChannelMinimum(0, getOps().stats().percentile(img, 10).getRealDouble());
-						imgp.setChannelMaximum(0, getOps().stats().percentile(img, 90).getRealDouble());
+						ImageStats stats = fp.getStats(option, false);
+						imgp.setChannelMinimum(0, stats.getPercentile(10));
+						imgp.setChannelMaximum(0, stats.getPercentile(90));
 					}
 				}
 
@@ -84,6 +89,12 @@ public class ExportCtrl extends AbstractCtrl {
 		withLUTCheckBox.setSelected(true);
 	}
 
+	@Override
+	public Set<Change> getDependencies() {
+		// only the preview options are listed
+		return EnumSet.of(Change.IRF, Change.DATASET_FIT);
+	}
+
 	@Override
 	protected void refresh(FitParams<FloatType> params, FitResults results) {
 		// make a copy to prevent being changed by setAll()
@@ -1,7 +1,15 @@
 package flimlib.flimj.ui.controller;
 
+import java.util.EnumSet;
+import java.util.Set;
+
+import flimlib.flimj.ui.FitJob;
 import flimlib.flimj.ui.FitProcessor;
+import flimlib.flimj.ui.FitProcessor.Change;
+import flimlib.flimj.ui.Utils;
 import javafx.fxml.FXML;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
 import javafx.scene.control.ProgressIndicator;
 import javafx.scene.layout.BorderPane;
 
@@ -31,6 +39,12 @@ public class MainCtrl extends AbstractCtrl {
 	@FXML
 	private ProgressIndicator busyIndicator;
 
+	@FXML
+	private Label progressLabel;
+
+	@FXML
+	private Button cancelButton;
+
 	@Override
 	public void setFitProcessor(FitProcessor fp) {
 		super.setFitProcessor(fp);
@@ -57,10 +71,45 @@ public class MainCtrl extends AbstractCtrl {
 	 * @param progress the progress to show
 	 */
 	public void setProgress(Double progress) {
+		progressLabel.setText("");
 		if (progress != null) {
 			windowOverlayAssembly.setVisible(true);
 			busyIndicator.setProgress(progress);
 		} else
 			windowOverlayAssembly.setVisible(false);
 	}
+
+	/**
+	 * Show the progress of a job on the overlay, along with its throughput and the estimated time
+	 * left.
+	 *
+	 * @param job the job
+	 */
+	public void setProgress(FitJob job) {
+		setProgress(job.getProgress());
+		final double throughput = job.getThroughput();
+		final double eta = job.getETA();
+		if (throughput > 0 && Double.isFinite(eta)) {
+			final long seconds = Math.round(eta);
+			progressLabel.setText(String.format("%s fits/s, %d:%02d left",
+					Utils.prettyFmt(Math.round(throughput)), seconds / 60, seconds % 60));
+		}
+	}
+
+	/**
+	 * Set the action of the "Cancel" button on the progress overlay. The button is only shown
+	 * when there is an action.
+	 *
+	 * @param onCancel the action, or <code>null</code> to hide the button
+	 */
+	public void setCancelAction(Runnable onCancel) {
+		cancelButton.setVisible(onCancel != null);
+		cancelButton.setOnAction(onCancel != null ? event -> onCancel.run() : null);
+	}
+
+	@Override
+	public Set<Change> getDependencies() {
+		// nothing to refresh
+		return EnumSet.noneOf(Change.class);
+	}
 }
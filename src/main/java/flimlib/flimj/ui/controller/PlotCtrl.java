@@ -1,29 +1,29 @@
 package flimlib.flimj.ui.controller;
 
-import java.util.ArrayList;
-import java.util.List;
 import javafx.application.Platform;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
-import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.geometry.Rectangle2D;
 import javafx.scene.Group;
 import javafx.scene.SnapshotParameters;
 import javafx.scene.chart.LineChart;
 import javafx.scene.chart.NumberAxis;
-import javafx.scene.chart.XYChart.Data;
-import javafx.scene.chart.XYChart.Series;
 import javafx.scene.control.TextField;
+import javafx.scene.control.ToggleButton;
 import javafx.scene.image.ImageView;
 import javafx.scene.image.WritableImage;
 import javafx.scene.layout.AnchorPane;
+import javafx.scene.shape.Circle;
+import javafx.scene.shape.Line;
 import org.controlsfx.control.HiddenSidesPane;
 import org.controlsfx.control.SegmentedButton;
 import flimlib.flimj.FitParams;
 import flimlib.flimj.FitResults;
+import flimlib.flimj.ui.PlotCanvas;
+import flimlib.flimj.ui.PlotCanvas.Trace;
 import flimlib.flimj.ui.Utils;
 import flimlib.flimj.ui.VariableScaleAxis;
 import flimlib.flimj.ui.controls.NumericSpinner;
@@ -34,32 +34,49 @@ import net.imglib2.type.numeric.real.FloatType;
  */
 public class PlotCtrl extends AbstractCtrl {
 
-	private static final int TRN_IDX = 0;
-	private static final int FIT_IDX = 1;
-	private static final int RES_IDX = 2;
-	private static final int IRF_IDX = 3;
+	static final int TRN_IDX = 0;
+	static final int FIT_IDX = 1;
+	static final int RES_IDX = 2;
+	static final int IRF_IDX = 3;
 
-	private static final int BEG_IDX = 0;
-	private static final int END_IDX = 1;
+	static final int N_PLOTS = 4;
 
-	private static final int N_PLOTS = 4;
+	private static final float[] NO_IRF = new float[0];
 
 	/** cursors */
 	@FXML
 	private Group lCsr, rCsr;
 
+	/** cursor bars and handles */
+	@FXML
+	private Line lCsrBar, rCsrBar;
+
+	@FXML
+	private Circle lCsrCircle, rCsrCircle;
+
+	/** cursors in the residual plot (following the ones above) */
+	@FXML
+	private Group lCsrRes, rCsrRes;
+
+	@FXML
+	private Line lCsrBarRes, rCsrBarRes;
+
 	/** cursor position spinners */
 	@FXML
 	private NumericSpinner lCsrSpinner, rCsrSpinner;
 
 	/** cursor areas */
 	@FXML
-	private AnchorPane fitPlotAreaPane;
+	private AnchorPane fitPlotAreaPane, resPlotAreaPane;
 
 	/** plots */
 	@FXML
 	private LineChart<Number, Number> fitPlotChart, resPlotChart;
 
+	/** the canvases the series are drawn on */
+	@FXML
+	private PlotCanvas fitPlotCanvas, resPlotCanvas;
+
 	@FXML
 	private TextField phtnCntTextField;
 
@@ -72,6 +89,9 @@ public class PlotCtrl extends AbstractCtrl {
 	@FXML
 	private SegmentedButton fitYScaleSB;
 
+	@FXML
+	private ToggleButton linTB, logTB;
+
 	@FXML
 	private ImageView frostImageView;
 
@@ -85,12 +105,7 @@ public class PlotCtrl extends AbstractCtrl {
 	private int nIntervals;
 
 	/** plot series */
-	private Series<Number, Number>[] plotSeries;
-
-	/** temp lists of points */
-	private List<Data<Number, Number>>[] dataLists;
-
-	private int cursorIdc[][];
+	private Trace[] traces;
 
 	/** lookup table for photon count before an index */
 	private float[] prefixSum;
@@ -103,9 +118,43 @@ public class PlotCtrl extends AbstractCtrl {
 	 */
 	private double nonIRFCursorAdj[];
 
+	/**
+	 * Plots the latest results. Reused across refreshes so that refreshing allocates nothing.
+	 */
+	private final Runnable plotTask = () -> {
+		FitParams<FloatType> params = getParams();
+		FitResults rs = fp.getResults();
+		if (rs == null || rs.param == null) {
+			return;
+		}
+
+		int irfLength = params.instr == null ? 0 : params.instr.length;
+		plotFit(params.trans, getIRFInfo().trans, rs.residuals, rs.fitted, params.xInc,
+				irfLength);
+		phtnCntTextField.setText(getphtnCnt());
+	};
+
 	@Override
-	@SuppressWarnings("unchecked")
 	public void initialize() {
+		// set initial positions
+		lCsr.setTranslateX(0);
+		rCsr.setTranslateX(fitPlotAreaPane.getWidth());
+
+		// move together
+		lCsrRes.translateXProperty().bind(lCsr.translateXProperty());
+		rCsrRes.translateXProperty().bind(rCsr.translateXProperty());
+
+		// fit height
+		// without -1, the pane just gets wider and wider
+		lCsrBar.endYProperty().bind(fitPlotAreaPane.heightProperty().subtract(1));
+		rCsrBar.endYProperty().bind(fitPlotAreaPane.heightProperty().subtract(1));
+		lCsrBarRes.endYProperty().bind(resPlotAreaPane.heightProperty().subtract(1));
+		rCsrBarRes.endYProperty().bind(resPlotAreaPane.heightProperty().subtract(1));
+
+		// link the two toggle buttons to segmented button
+		fitYScaleSB.getButtons().addAll(linTB, logTB);
+		linTB.setSelected(true);
+
 		// initialize properties with invalid values (corrected by refresh())
 		lCsrPos = new SimpleObjectProperty<>();
 		lCsrPos.set(-1.0);
@@ -120,37 +169,28 @@ public class PlotCtrl extends AbstractCtrl {
 		lCsrSpinner.setMax(0.0);
 		rCsrSpinner.setMax(0.0);
 
-		initListeners(rCsr, rCsrPos, rCsrSpinner, fitEnd);
-		initListeners(lCsr, lCsrPos, lCsrSpinner, fitStart);
+		initListeners(rCsr, rCsrCircle, rCsrPos, rCsrSpinner, fitEnd);
+		initListeners(lCsr, lCsrCircle, lCsrPos, lCsrSpinner, fitStart);
 
-		fitPlotAreaPane.widthProperty().addListener((obs, oldVal, newVal) -> {
-			// == 0 at init
-			if (oldVal.floatValue() != 0) {
-				FitResults rslt = getResults();
-				if (getParams().trans != null & rslt.fitted != null && rslt.residuals != null) {
-					plotFit(getParams().trans, getParams().instr, getResults().residuals,
-							getResults().fitted, getParams().xInc, 0);
-				}
-			}
-		});
-
-		plotSeries = (Series<Number, Number>[]) new Series[N_PLOTS];
-		dataLists = (ArrayList<Data<Number, Number>>[]) new ArrayList[N_PLOTS];
-		cursorIdc = new int[N_PLOTS][2];
+		traces = new Trace[N_PLOTS];
 		nonIRFCursorAdj = new double[2];
 
-		// put series into chart
-		fitPlotChart.getData().add(plotSeries[TRN_IDX] = new Series<Number, Number>());
-		fitPlotChart.getData().add(plotSeries[FIT_IDX] = new Series<Number, Number>());
-		fitPlotChart.getData().add(plotSeries[IRF_IDX] = new Series<Number, Number>());
-		resPlotChart.getData().add(plotSeries[RES_IDX] = new Series<Number, Number>());
+		// trans: dots only, fitted and IRF: lines, res: thinner line
+		traces[TRN_IDX] = new Trace(PlotCanvas.CHART_COLOR_2, 0);
+		traces[FIT_IDX] = new Trace(PlotCanvas.CHART_COLOR_1, 3);
+		traces[IRF_IDX] = new Trace(PlotCanvas.CHART_COLOR_3, 3);
+		traces[RES_IDX] = new Trace(PlotCanvas.CHART_COLOR_1, 2);
+
+		// draw series over the charts (the canvases redraw themselves on resize)
+		fitPlotCanvas.attach(fitPlotChart);
+		fitPlotCanvas.addTrace(traces[TRN_IDX]);
+		fitPlotCanvas.addTrace(traces[FIT_IDX]);
+		fitPlotCanvas.addTrace(traces[IRF_IDX]);
+		resPlotCanvas.attach(resPlotChart);
+		resPlotCanvas.addTrace(traces[RES_IDX]);
 		// auto ranging prevents manual adjustment of bounds
 		fitPlotChart.getXAxis().setAutoRanging(false);
 		resPlotChart.getXAxis().setAutoRanging(false);
-		// data point lists for swapping points in/out of series
-		for (int i = 0; i < N_PLOTS; i++) {
-			dataLists[i] = new ArrayList<Data<Number, Number>>();
-		}
 
 		// dummy
 		prefixSum = new float[1];
@@ -213,30 +253,20 @@ public class PlotCtrl extends AbstractCtrl {
 		// the interval in the plot is [start, end]
 		fitEnd.set((fp.isPickingIRF() ? getIRFInfo() : params).fitEnd - 1);
 
-		Platform.runLater(() -> {
-			FitResults rs = fp.getResults();
-			if (rs == null || rs.param == null) {
-				return;
-			}
-
-			int irfLength = params.instr == null ? 0 : params.instr.length;
-			plotFit(params.trans, getIRFInfo().trans, rs.residuals, rs.fitted, params.xInc,
-					irfLength);
-			phtnCntTextField.setText(getphtnCnt());
-		});
-
+		Platform.runLater(plotTask);
 	}
 
 	/**
 	 * Adds change listeners to critical values so that they work together.
 	 *
-	 * @param csr     the cursor
-	 * @param csrPos  the cursor position in [0, 1]
-	 * @param spinner the spinner associated with the cursor position
-	 * @param index   the integer index associated with the cursor position
+	 * @param csr       the cursor
+	 * @param csrCircle the handle of the cursor
+	 * @param csrPos    the cursor position in [0, 1]
+	 * @param spinner   the spinner associated with the cursor position
+	 * @param index     the integer index associated with the cursor position
 	 */
-	private void initListeners(Group csr, ObjectProperty<Double> csrPos, NumericSpinner spinner,
-			ObjectProperty<Integer> index) {
+	private void initListeners(Group csr, Circle csrCircle, ObjectProperty<Double> csrPos,
+			NumericSpinner spinner, ObjectProperty<Integer> index) {
 		final boolean isLCsr = csr == lCsr;
 		// csrPos <-> csrX / width
 		fitPlotAreaPane.widthProperty().addListener((obs, oldVal, newVal) -> {
@@ -319,6 +349,40 @@ public class PlotCtrl extends AbstractCtrl {
 			// update bounds in param storage
 			updateParam(isLCsr, index.get());
 		});
+
+		// drag the cursor, but not past the other one
+		csr.setOnMouseDragged(event -> {
+			// event.getX() is relative to the previous center
+			final double newTranslateX = csr.getTranslateX() + event.getX();
+			final double min = isLCsr ? 0.0 : lCsr.getTranslateX();
+			final double max = isLCsr ? rCsr.getTranslateX() : fitPlotAreaPane.getWidth();
+			csr.setTranslateX(clamp(newTranslateX, min, max));
+		});
+
+		// highlight the cursor when moused on
+		csr.setOnMouseEntered(event -> {
+			final double margin = csrCircle.getRadius() * 2.5;
+			csrCircle.setCenterY(
+					clamp(event.getY(), margin, fitPlotAreaPane.getHeight() - margin));
+			csrCircle.setScaleX(2);
+			csrCircle.setScaleY(2);
+		});
+
+		// restore the cursor when lost focus
+		csr.setOnMouseExited(event -> {
+			csrCircle.setScaleX(1);
+			csrCircle.setScaleY(1);
+		});
+	}
+
+	/**
+	 * @param value the value
+	 * @param min   the lower limit
+	 * @param max   the upper limit
+	 * @return <code>value</code> clamped to [min, max] (min wins if min &gt; max)
+	 */
+	private static double clamp(double value, double min, double max) {
+		return Math.max(min, Math.min(value, max));
 	}
 
 	/**
@@ -358,120 +422,56 @@ public class PlotCtrl extends AbstractCtrl {
 	 * Updates the portion displayed for all series w.r.t. their cursors.
 	 */
 	private void adjustPlottedPortion() {
-		// restore index counters
+		// restore crops of the series following the cursors
 		for (int i = 0; i < N_PLOTS; i++) {
 			if (fp.isPickingIRF() ^ i != IRF_IDX)
-				cursorIdc[i][BEG_IDX] = cursorIdc[i][END_IDX] = 0;
+				traces[i].crop(0, 0);
 		}
 
 		double lCsrPosValue = lCsrPos.get();
 		double rCsrPosValue = rCsrPos.get();
 
+		// the other series are unchanged (just cropped to what it looked like last time)
 		if (fp.isPickingIRF()) {
-			// zoom in to IRF if too small
-			// fitPlotChart.setAnimated(true);
-			// ((NumberAxis) fitPlotChart.getYAxis()).setAutoRanging(false);
-			// FitParams<FloatType> irf = getIRFInfo();
-			// float max = Float.NEGATIVE_INFINITY;
-			// for (int i = irf.fitStart; i < irf.fitEnd; i++)
-			// max = Math.max(irf.trans[i], max);
-			// ((NumberAxis) fitPlotChart.getYAxis()).setUpperBound(max * 1.1);
-			// ((NumberAxis) fitPlotChart.getYAxis()).setLowerBound(0);
-			// fitPlotChart.setAnimated(false);
-
 			adjustPlottedPortion(true, IRF_IDX, lCsrPosValue);
 			adjustPlottedPortion(false, IRF_IDX, rCsrPosValue);
-
-			// unchanged (just crop what it looked like last time)
-			adjustPlottedPortion(true, FIT_IDX, -1);
-			adjustPlottedPortion(false, FIT_IDX, -1);
-			adjustPlottedPortion(true, RES_IDX, -1);
-			adjustPlottedPortion(false, RES_IDX, -1);
 		} else {
 			lCsrPosValue += nonIRFCursorAdj[0];
 			rCsrPosValue += nonIRFCursorAdj[1];
-			// fitPlotChart.setAnimated(true);
-			// ((NumberAxis) fitPlotChart.getYAxis()).setAutoRanging(true);
-			// fitPlotChart.setAnimated(false);
 
 			adjustPlottedPortion(true, FIT_IDX, lCsrPosValue);
 			adjustPlottedPortion(false, FIT_IDX, rCsrPosValue);
 			adjustPlottedPortion(true, RES_IDX, lCsrPosValue);
 			adjustPlottedPortion(false, RES_IDX, rCsrPosValue);
-
-			// unchanged (just crop what it looked like last time)
-			adjustPlottedPortion(true, IRF_IDX, -1);
-			adjustPlottedPortion(false, IRF_IDX, -1);
 		}
 	}
 
 	/**
-	 * The one-liner for {@link #adjustPlottedPortion(boolean, Series, List, double, int)}
-	 *
-	 * @param isLCsr
-	 * @param plotIdx
-	 * @param csrPosValue
-	 */
-	private void adjustPlottedPortion(boolean isLCsr, int plotIdx, double csrPosValue) {
-		int begEnd = isLCsr ? BEG_IDX : END_IDX;
-		cursorIdc[plotIdx][begEnd] = adjustPlottedPortion(isLCsr, plotSeries[plotIdx],
-				dataLists[plotIdx], csrPosValue, cursorIdc[plotIdx][begEnd]);
-	}
-
-	/**
-	 * Adjusts the portion of the {@link Series} displayed according to the change of the cursor.
+	 * Adjusts the portion of a series displayed according to the change of the cursor.
 	 *
 	 * @param isLCsr      {@code true} the cursor is {@link #lCsr}
-	 * @param series      the data series in question
-	 * @param dataList    the list of (x, y) data
-	 * @param csrPosValue the position of the cursor
-	 * @param lastIdx     last known distance to data boundaries (left cursor w.r.t. the first
-	 *                    element and right cursor the last in {@code dataList}
-	 * @return the updated distance
+	 * @param plotIdx     the index of the series in question
+	 * @param csrPosValue the position of the cursor, the crop is kept if not in [0, 1]
 	 */
-	private int adjustPlottedPortion(boolean isLCsr, Series<Number, Number> series,
-			List<Data<Number, Number>> dataList, double csrPosValue, int lastIdx) {
-		ObservableList<Data<Number, Number>> data = series.getData();
-		int sz = dataList.size();
-		if (sz == 0) {
-			return lastIdx;
+	private void adjustPlottedPortion(boolean isLCsr, int plotIdx, double csrPosValue) {
+		final Trace trace = traces[plotIdx];
+		final int sz = trace.getLength();
+		if (sz == 0 || csrPosValue < 0 || csrPosValue > 1) {
+			return;
 		}
 
-		int curIdx;
-		if (csrPosValue < 0 || csrPosValue > 1) {
-			// in this case, simply crop the plot
-			curIdx = lastIdx;
-			lastIdx = 0;
+		final int curIdx = (int) Math.round(csrPosValue * (sz - 1));
+		if (isLCsr) {
+			trace.crop(curIdx, trace.getTail());
 		} else {
-			curIdx = (int) Math.round(csrPosValue * (sz - 1));
-			curIdx = isLCsr ? curIdx : sz - curIdx - 1;
-		}
-
-		// determine whether to add or remove from the displaying set
-		int diff = curIdx - lastIdx;
-		if (diff < 0) {
-			if (isLCsr) {
-				data.addAll(0, dataList.subList(curIdx, lastIdx));
-			} else {
-				data.addAll(dataList.subList(sz - lastIdx, sz - curIdx));
-			}
-			lastIdx = curIdx;
-		} else if (diff > 0) {
-			// remove doesn't work well with animation
-			series.getChart().setAnimated(false);
-			if (isLCsr) {
-				data.remove(0, diff);
-			} else {
-				data.remove(data.size() - diff, data.size());
-			}
-			series.getChart().setAnimated(true);
-			lastIdx = curIdx;
+			trace.crop(trace.getHead(), sz - curIdx - 1);
 		}
-		return lastIdx;
+		(plotIdx == RES_IDX ? resPlotCanvas : fitPlotCanvas).invalidate();
 	}
 
 	/**
-	 * Plots the fitted function as well as the transient data and residuals.
+	 * Plots the fitted function as well as the transient data and residuals. The series buffers
+	 * and {@link #prefixSum} are reused, so nothing is allocated unless the number of bins grows.
 	 *
 	 * @param trans the transient series
 	 * @param xInc  the x (time) increment
@@ -484,102 +484,89 @@ public class PlotCtrl extends AbstractCtrl {
 
 		nonIRFCursorAdj[0] = -irfLength * xInc / 2;
 
-		instr = instr == null ? new float[0] : instr;
-		// resize
-		prefixSum = trans.length == (trans.length + 1) ? prefixSum : new float[trans.length + 1];
+		prefixSum = fillSeries(traces, prefixSum, trans, instr, residuals, yFit, fitStart,
+				irfPrefixLen, fp.isPickingIRF());
+		traces[TRN_IDX].setX(0, xInc);
+		traces[FIT_IDX].setX(0, xInc);
+		traces[RES_IDX].setX(0, xInc);
 
+		int irfDataOffset = !fp.isPickingIRF() ? getIRFInfo().fitStart : 0;
+		// make IRF follow the start cursor
+		traces[IRF_IDX].setX(-irfDataOffset * xInc, xInc);
+
+		adjustPlottedPortion();
+		fitPlotCanvas.invalidate();
+		resPlotCanvas.invalidate();
+
+		// make the plot fit the area
+		((NumberAxis) fitPlotChart.getXAxis()).setUpperBound(xMax);
+		((NumberAxis) resPlotChart.getXAxis()).setUpperBound(xMax);
+	}
+
+	/**
+	 * Fills the buffers of the series plotted by {@link #plotFit} and the photon count prefix sum
+	 * of the transient (or of the IRF while it is being picked). Nothing is allocated unless the
+	 * number of bins changes.
+	 *
+	 * @param traces       the series, indexed by {@link #TRN_IDX} etc.
+	 * @param prefixSum    the prefix sum of the previous call
+	 * @param trans        the transient
+	 * @param instr        the IRF, may be <code>null</code>
+	 * @param residuals    the residuals of the fit
+	 * @param yFit         the fitted function
+	 * @param fitStart     the index of the transient the fit starts at
+	 * @param irfPrefixLen the number of values of the fit before <code>fitStart</code>
+	 * @param pickingIRF   <code>true</code> if the prefix sum is of the IRF
+	 * @return <code>prefixSum</code>, or a new array if its length does not fit
+	 */
+	static float[] fillSeries(Trace[] traces, float[] prefixSum, float[] trans, float[] instr,
+			float[] residuals, float[] yFit, int fitStart, int irfPrefixLen, boolean pickingIRF) {
+		instr = instr == null ? NO_IRF : instr;
+		// resize (prefixSum[0] is always 0)
+		final int prefixSumLength = Math.max(trans.length, instr.length) + 1;
+		prefixSum = prefixSum.length == prefixSumLength ? prefixSum : new float[prefixSumLength];
+
+		final float[] transData = traces[TRN_IDX].resize(trans.length);
+		final float[] fitData = traces[FIT_IDX].resize(trans.length);
+		final float[] resData = traces[RES_IDX].resize(trans.length);
+		float transMax = Float.NEGATIVE_INFINITY;
 		for (int i = 0; i < trans.length; i++) {
-			final float t = i * xInc;
 			final float data = trans[i];
-			setData(dataLists[TRN_IDX], i, t, data);
+			transData[i] = data;
+			transMax = Math.max(transMax, data);
 			// used for photon count later
-			if (!fp.isPickingIRF()) {
+			if (!pickingIRF) {
 				prefixSum[i + 1] = prefixSum[i] + data;
 			}
 
 			final int idx = i - fitStart + irfPrefixLen;
 			float y = idx >= 0 && idx < yFit.length ? yFit[idx] : 0;
-			// NaN or Inf hangs the plotting thread
+			// plot NaN or Inf as 0
 			y = Float.isFinite(y) ? y : 0;
 			float r = idx >= 0 && idx < residuals.length ? residuals[idx] : 0;
 			r = Float.isFinite(r) ? r : 0;
-			setData(dataLists[FIT_IDX], i, t, y);
-			setData(dataLists[RES_IDX], i, t, r);
+			fitData[i] = y;
+			resData[i] = r;
 		}
 
-		int irfDataOffset = !fp.isPickingIRF() ? irfDataOffset = getIRFInfo().fitStart : 0;
-
-		// find a scaling factor that makes trans and irf has the same height
-		float irfNormalizer = 1;
-		if (instr.length > 0) {
-			float transMax = Float.NEGATIVE_INFINITY;
-			for (int i = 0; i < trans.length; i++)
-				transMax = Math.max(transMax, trans[i]);
-			float irfMax = Float.NEGATIVE_INFINITY;
-			for (int i = 0; i < instr.length; i++)
-				irfMax = Math.max(irfMax, instr[i]);
-			irfNormalizer = transMax / irfMax;
-			if (irfNormalizer < 0 || !Float.isFinite(irfNormalizer))
-				irfNormalizer = 1;
-		}
+		final float[] irfData = traces[IRF_IDX].resize(instr.length);
+		float irfMax = Float.NEGATIVE_INFINITY;
 		for (int i = 0; i < instr.length; i++) {
-			// make IRF follow the start cursor
-			final float t = (i - irfDataOffset) * xInc;
-			setData(dataLists[IRF_IDX], i, t, instr[i] * irfNormalizer);
+			irfData[i] = instr[i];
+			irfMax = Math.max(irfMax, instr[i]);
 			// display IRF intensity when picking
-			if (fp.isPickingIRF()) {
+			if (pickingIRF) {
 				prefixSum[i + 1] = prefixSum[i] + instr[i];
 			}
 		}
-		dataLists[IRF_IDX].subList(instr.length, dataLists[IRF_IDX].size()).clear();
-
-		// again, remove doesn't work well with animations
-		fitPlotChart.setAnimated(false);
-		resPlotChart.setAnimated(false);
-
-		// refreshes each series
-		ObservableList<Data<Number, Number>> data;
-		data = plotSeries[TRN_IDX].getData();
-		data.clear();
-		data.addAll(dataLists[TRN_IDX]);
-
-		data = plotSeries[FIT_IDX].getData();
-		data.clear();
-		data.addAll(dataLists[FIT_IDX]);
-
-		data = plotSeries[IRF_IDX].getData();
-		data.clear();
-		data.addAll(dataLists[IRF_IDX]);
-
-		data = plotSeries[RES_IDX].getData();
-		data.clear();
-		data.addAll(dataLists[RES_IDX]);
-
-		adjustPlottedPortion();
-
-		fitPlotChart.setAnimated(true);
-		resPlotChart.setAnimated(true);
-
-		// make the plot fit the area
-		((NumberAxis) fitPlotChart.getXAxis()).setUpperBound(xMax);
-		((NumberAxis) resPlotChart.getXAxis()).setUpperBound(xMax);
-	}
-
-	/**
-	 * Add a new data point to the chart.
-	 *
-	 * @param list the series data
-	 * @param idx  the index to insert into {@code list}
-	 * @param x    the x value
-	 * @param y    the y value
-	 */
-	private void setData(List<Data<Number, Number>> list, int idx, float x, float y) {
-		if (idx >= list.size()) {
-			list.add(new Data<>(x, y));
-		} else {
-			final Data<Number, Number> point = list.get(idx);
-			point.setXValue(x);
-			point.setYValue(y);
+		// find a scaling factor that makes trans and irf has the same height
+		float irfNormalizer = transMax / irfMax;
+		if (irfNormalizer < 0 || !Float.isFinite(irfNormalizer))
+			irfNormalizer = 1;
+		if (irfNormalizer != 1) {
+			for (int i = 0; i < instr.length; i++)
+				irfData[i] *= irfNormalizer;
 		}
+		return prefixSum;
 	}
 }
@@ -1,6 +1,9 @@
 package flimlib.flimj.ui.controller;
 
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
@@ -24,17 +27,11 @@ import javafx.scene.layout.VBox;
 import javafx.util.Duration;
 
 import net.imagej.display.ColorTables;
-import net.imagej.ops.map.MapViewRAIToRAI;
-import net.imagej.ops.special.computer.AbstractUnaryComputerOp;
-import net.imglib2.IterableInterval;
-import net.imglib2.RandomAccess;
+import net.imglib2.Interval;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.converter.RealLUTConverter;
-import net.imglib2.roi.Regions;
-import net.imglib2.type.logic.BitType;
 import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.type.numeric.real.FloatType;
-import net.imglib2.view.Views;
 
 import org.controlsfx.control.PopOver;
 import org.controlsfx.control.PopOver.ArrowLocation;
@@ -42,7 +39,11 @@ import org.controlsfx.control.PopOver.ArrowLocation;
 import flimlib.flimj.FitParams;
 import flimlib.flimj.FitResults;
 import flimlib.flimj.ui.FitProcessor;
+import flimlib.flimj.ui.FitProcessor.Change;
+import flimlib.flimj.ui.ImageStats;
 import flimlib.flimj.ui.PreviewImageDisplay;
+import flimlib.flimj.ui.PreviewImageDisplay.Annotation;
+import flimlib.flimj.ui.TiledFitter;
 import flimlib.flimj.ui.UIException;
 import flimlib.flimj.ui.Utils;
 import flimlib.flimj.ui.controls.NumericSpinner;
@@ -93,6 +94,9 @@ public class PreviewCtrl extends AbstractCtrl {
 	/** True if l/rClickPane click handler has taken the update job */
 	private boolean clickUpdate;
 
+	/** True if the color range of the result image is based on fitted pixels */
+	private boolean resultRangeValid;
+
 	/** The previous valid preview option (z, A, intensity, etc.) */
 	private String lastValidPreviewOption;
 
@@ -314,11 +318,11 @@ public class PreviewCtrl extends AbstractCtrl {
 			// entering and exiting IRF mode
 			if ("IRF Intensity".equals(showChoiceBox.getValue())) {
 				fp.setIsPickingIRF(true);
-				requestUpdate();
+				requestUpdate(Change.IRF);
 				return;
 			} else if ("IRF Intensity".equals(oldVal)) {
 				fp.setIsPickingIRF(false);
-				requestUpdate();
+				requestUpdate(Change.IRF);
 				return;
 			}
 			refreshResultImage();
@@ -337,7 +341,10 @@ public class PreviewCtrl extends AbstractCtrl {
 					colorizeResult = compositeResult = true;
 					break;
 			}
-			refreshResultImage();
+			// only the colors change, so the image needs no reconversion if it can be recolored
+			RESULTS_CNVTR.setLUT(colorizeResult ? Utils.LIFETIME_LUT : ColorTables.GRAYS);
+			if (showChoiceBox.getValue() == null || !resultDisplay.recolor(makeResultAnnotation()))
+				refreshResultImage();
 		});
 		// enabled if there is a show option
 		asChoiceBox.setDisable(true);
@@ -375,6 +382,13 @@ public class PreviewCtrl extends AbstractCtrl {
 		colorizeResult = compositeResult = true;
 	}
 
+	@Override
+	public Set<Change> getDependencies() {
+		// the cursor and preview fits are shown by the plot and settings
+		return EnumSet.of(Change.PARAMS, Change.THRESHOLD, Change.BINNING, Change.IRF,
+				Change.DATASET_FIT);
+	}
+
 	@Override
 	protected void refresh(FitParams<FloatType> params, FitResults results) {
 		long[] permutedCoordinates =
@@ -402,6 +416,19 @@ public class PreviewCtrl extends AbstractCtrl {
 		pickingIRF.set(fp.isPickingIRF());
 	}
 
+	@Override
+	protected void refreshTiles(List<Interval> dirty) {
+		String showOption = showChoiceBox.getValue();
+		// the intensity images don't change during fitting
+		if (showOption == null || showOption.contains("Intensity"))
+			return;
+		// derived maps (τₘ, A %) are recomputed as a whole, and so is the color range until
+		// there are fitted pixels to base it on
+		if (!resultRangeValid || showOption.contains("%") || "τₘ".equals(showOption)
+				|| !resultDisplay.updateRegions(dirty))
+			refreshResultImage();
+	}
+
 	@Override
 	public void destroy() {
 		intensityDisplay.destroy();
@@ -417,10 +444,10 @@ public class PreviewCtrl extends AbstractCtrl {
 		String showOption = showChoiceBox.getValue();
 		if (showOption == null) {
 			// show placeholder image
-			resultDisplay.setImage(null, null, null);
+			resultDisplay.setImage(null, null, (Annotation) null);
 			return;
 		}
-		loadAnotatedResultsImage(fp.getPreviewImg(showOption));
+		loadAnotatedResultsImage(showOption);
 	}
 
 	/**
@@ -432,71 +459,52 @@ public class PreviewCtrl extends AbstractCtrl {
 	 */
 	private void loadAnotatedIntensityImage(final RandomAccessibleInterval<FloatType> intensity,
 			final float thresh) {
-		IterableInterval<FloatType> itr = Views.iterable(intensity);
-		INTENSITY_CONV.setMax(getOps().stats().max(itr).getRealDouble());
+		INTENSITY_CONV.setMax(fp.getStats("Intensity", false).getMax());
 
 		intensityDisplay.setImage(intensity, INTENSITY_CONV,
-				(srcRA, lutedRA) -> srcRA.get().get() < thresh ? BELOW_THR_RED : lutedRA.get());
+				new Annotation().setMask(intensity, value -> value < thresh, BELOW_THR_RED),
+				Arrays.asList(fp.getVersion("Intensity"), thresh));
 	}
 
 	/**
 	 * Annotates the result image and load to the on-screen Image.
 	 *
-	 * @param result the result data
+	 * @param option the preview option of the result
 	 */
-	@SuppressWarnings("unchecked")
-	private void loadAnotatedResultsImage(RandomAccessibleInterval<FloatType> result) {
-		final RandomAccessibleInterval<FloatType> fitStatus = fp.getPreviewImg("Fit Status");
-		final RandomAccess<FloatType> fitStatusRA =
-				fitStatus != null ? fitStatus.randomAccess() : null;
-
-		IterableInterval<FloatType> itr = null;
-		if (fitStatus != null) {
-			// iterate over good fits only
-			RandomAccessibleInterval<BitType> mask =
-					(RandomAccessibleInterval<BitType>) getOps().run(MapViewRAIToRAI.class,
-							fitStatus, new AbstractUnaryComputerOp<FloatType, BitType>() {
-								@Override
-								public void compute(FloatType input, BitType output) {
-									output.set(input.get() == 0);
-								}
-							}, new BitType());
-			itr = Regions.sampleWithRandomAccessible(mask, result);
-		} else
-			itr = Views.iterable(result);
-
-		RESULTS_CNVTR.setMin(getOps().stats().percentile(itr, 5).getRealDouble());
-		RESULTS_CNVTR.setMax(getOps().stats().percentile(itr, 95).getRealDouble());
+	private void loadAnotatedResultsImage(String option) {
+		final RandomAccessibleInterval<FloatType> result = fp.getPreviewImg(option);
+		// percentiles over good fits only
+		final ImageStats stats = fp.getStats(option, true);
+
+		// keep the last range if nothing is fitted yet
+		resultRangeValid = stats.getCount() > 0;
+		if (resultRangeValid) {
+			RESULTS_CNVTR.setMin(stats.getPercentile(5));
+			RESULTS_CNVTR.setMax(stats.getPercentile(95));
+		}
 		RESULTS_CNVTR.setLUT(colorizeResult ? Utils.LIFETIME_LUT : ColorTables.GRAYS);
 
-		final RandomAccess<ARGBType> coloredIntensityRA =
-				compositeResult ? intensityDisplay.getColorImage().randomAccess() : null;
-		resultDisplay.setImage(result, RESULTS_CNVTR, (srcRA, lutedRA) -> {
-			// regular convertion
-			ARGBType output = lutedRA.get();
-
-			int status = FitResults.RET_UNKNOWN;
-			if (fitStatusRA != null)
-				status = (int) fitStatusRA.setPositionAndGet(srcRA).get();
-
-			// below-thresh pixels
-			if (status == FitResults.RET_INTENSITY_BELOW_THRESH)
-				output.set(BELOW_THR_BLK);
-
-			// multiply by brightness from intensity
-			if (coloredIntensityRA != null) {
-				int l = coloredIntensityRA.setPositionAndGet(srcRA).get();
-				int h = output.get();
-
-				output.set(ARGBType.rgba( //
-						(int) (ARGBType.red(h) / 255.0 * ARGBType.red(l)),
-						(int) (ARGBType.green(h) / 255.0 * ARGBType.green(l)),
-						(int) (ARGBType.blue(h) / 255.0 * ARGBType.blue(l)),
-						(int) (ARGBType.alpha(h) / 255.0 * ARGBType.alpha(l))));
-			}
+		// the mask is the fit status and the composite brightness is the intensity
+		resultDisplay.setImage(result, RESULTS_CNVTR, makeResultAnnotation(),
+				Arrays.asList(fp.getVersion(option), fp.getVersion("Fit Status"),
+						fp.getVersion("Intensity")));
+	}
 
-			return output;
-		});
+	/**
+	 * @return the annotation of the result image under the current coloring options
+	 */
+	private Annotation makeResultAnnotation() {
+		final RandomAccessibleInterval<FloatType> fitStatus = fp.getPreviewImg("Fit Status");
+		Annotation annotation = new Annotation();
+		// below-thresh pixels and pixels not fitted (yet)
+		if (fitStatus != null)
+			annotation.setMask(fitStatus, status -> status == FitResults.RET_INTENSITY_BELOW_THRESH
+					|| status == TiledFitter.RET_NOT_FITTED, BELOW_THR_BLK);
+		// multiply by brightness from intensity as annotated on the left
+		if (compositeResult)
+			annotation.setComposite(fp.getPreviewImg("Intensity"), INTENSITY_CONV,
+					fp.getParams().iThresh, BELOW_THR_RED);
+		return annotation;
 	}
 
 	/**
@@ -512,6 +520,6 @@ public class PreviewCtrl extends AbstractCtrl {
 		final int y = yProperty.get().intValue();
 
 		fp.setPreviewPos(x, y, irf);
-		requestUpdate();
+		requestUpdate(Change.CURSOR);
 	}
 }
@@ -23,15 +23,16 @@ import org.scijava.widget.FileWidget;
 import flimlib.NoiseType;
 import flimlib.flimj.FitParams;
 import flimlib.flimj.FitResults;
+import flimlib.flimj.ui.FitJob;
 import flimlib.flimj.ui.FitParamsPrompter;
 import flimlib.flimj.ui.FitProcessor;
+import flimlib.flimj.ui.FitProcessor.Change;
 import flimlib.flimj.ui.FitProcessor.FitType;
 import flimlib.flimj.ui.Utils;
 import flimlib.flimj.ui.controls.NumericSpinner;
 import flimlib.flimj.ui.controls.NumericTextField;
 import javafx.animation.Timeline;
 import javafx.animation.KeyFrame;
-import javafx.application.Platform;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.beans.value.ChangeListener;
@@ -59,7 +60,7 @@ public class SettingsCtrl extends AbstractCtrl {
 	private NumericSpinner binSizeSpinner, iThreshSpinner;
 
 	@FXML
-	private CheckBox fullBinningCheckBox;
+	private CheckBox fullBinningCheckBox, coarseFirstCheckBox;
 
 	@FXML
 	private TextField chisqTextField;
@@ -121,13 +122,11 @@ public class SettingsCtrl extends AbstractCtrl {
 				threshBinZero = newVal.floatValue();
 			}
 
-			// recalculate global trans for pixels above threshold
-			fp.invalidateGlobalTrans();
 			// turn off estimate based on percentage
 			// otherwise user's setting iThresh = 0 triggers that
 			params.iThreshPercent = params.iThresh >= 0 ? -1 : 5;
 
-			requestUpdate();
+			requestUpdate(Change.THRESHOLD);
 		});
 
 		HashMap<String, Double> kwMap = new HashMap<>();
@@ -142,19 +141,16 @@ public class SettingsCtrl extends AbstractCtrl {
 			// display pending state
 			mainCtrl.setProgress(-1.0);
 
-			// binning will freeze the JFX thread and not allow the +/- event to be consumed
-			// which causes indefinite +/- and resulting calls to setBinning()
-			fp.submitRunnable(() -> {
-				fp.setBinning(newVal.intValue());
-
-				// update of UI components should be run from JFX thread
-				Platform.runLater(() -> {
-					binSizeSpinner.setDisable(fullBinningCheckBox.isSelected());
-					// restore from pending state
-					mainCtrl.setProgress(null);
+			// bin in the background so that the JFX thread can consume the +/- event (otherwise
+			// the spinner keeps stepping)
+			fp.submitBinning(newVal.intValue()).whenDone(job -> {
+				if (job.getError() != null)
+					getLogs().error("Binning failed", job.getError());
+				binSizeSpinner.setDisable(fullBinningCheckBox.isSelected());
+				// restore from pending state
+				mainCtrl.setProgress(null);
 
-					requestUpdate();
-				});
+				requestUpdate(Change.BINNING);
 			});
 		});
 		fullBinningCheckBox.selectedProperty().addListener(new ChangeListener<Boolean>() {
@@ -320,47 +316,54 @@ public class SettingsCtrl extends AbstractCtrl {
 
 			// update IRF information and notify fp
 			fp.setIRF(chosenIRF);
-			requestUpdate();
+			requestUpdate(Change.IRF);
+		});
+
+		// fit datasets in interlaced passes, showing an approximate map early
+		coarseFirstCheckBox.selectedProperty().addListener((obs, oldVal, newVal) -> {
+			fp.setCoarseFirst(newVal);
 		});
 
 		fitButton.setOnAction(event -> {
 			MainCtrl mainCtrl = (MainCtrl) parentCtrl;
+
+			// new options, shown as soon as the first results are available
+			List<String> previewOptions = new ArrayList<>();
+			for (Text label : paramLabels)
+				previewOptions.add(label.getText());
+			previewOptions.add("τₘ");
+
+			// do heavy lifting on a separate thread
+			FitJob fitJob = fp.submitFitDataset(previewOptions);
+			mainCtrl.setCancelAction(fitJob::cancel);
+
 			// check fit status every 0.1s untill stopped
 			Timeline fittingBusyAnimTL = new Timeline(new KeyFrame(Duration.seconds(0.1),
-					e -> mainCtrl.setProgress(fp.getFitProgress())));
+					e -> mainCtrl.setProgress(fitJob)));
 			fittingBusyAnimTL.setCycleCount(Timeline.INDEFINITE);
-
-			// do heavy lifting on a separate thread
-			fp.submitRunnable(() -> {
+			fittingBusyAnimTL.play();
+
+			// update UI when done
+			fitJob.whenDone(job -> {
+				mainCtrl.setCancelAction(null);
+				// show "Done" for a brief moment
+				fittingBusyAnimTL.stop();
+				fittingBusyAnimTL.getKeyFrames()
+						.setAll(new KeyFrame(Duration.seconds(0.1), e -> mainCtrl.setProgress(null)));
+				fittingBusyAnimTL.setCycleCount(1);
 				fittingBusyAnimTL.play();
 
-				fp.fitDataset();
+				if (job.getError() != null)
+					getLogs().error("Dataset fitting failed", job.getError());
 
-				// update UI when done
-				Platform.runLater(() -> {
-					// show "Done" for a brief moment
-					fittingBusyAnimTL.stop();
-					fittingBusyAnimTL.getKeyFrames()
-							.setAll(new KeyFrame(Duration.seconds(0.1), e -> mainCtrl.setProgress(null)));
-					fittingBusyAnimTL.setCycleCount(1);
-					fittingBusyAnimTL.play();
-
-					// set new options
-					List<String> previewOptions = new ArrayList<>();
-					for (Text label : paramLabels)
-						previewOptions.add(label.getText());
-					previewOptions.add("τₘ");
-					fp.setPreviewOptions(previewOptions);
-
-					requestUpdate();
-				});
+				requestUpdate(Change.DATASET_FIT);
 			});
 		});
 	}
 
 	@Override
 	public void refresh(FitParams<FloatType> params, FitResults results) {
-		iThreshSpinner.setMax(getOps().stats().max(results.intensityMap).getRealDouble());
+		iThreshSpinner.setMax(fp.getStats("Intensity", false).getMax());
 		iThreshSpinner.getNumberProperty().setValue((double) params.iThresh);
 		binSizeSpinner.getNumberProperty().setValue((double) fp.getBinRadius());
 		if (fp.getAlgo() != null){
@@ -1,4 +0,0 @@
-function init() {
-
-}
-init();
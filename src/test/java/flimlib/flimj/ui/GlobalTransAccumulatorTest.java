@@ -0,0 +1,66 @@
+package flimlib.flimj.ui;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Checks the incremental sums of {@link GlobalTransAccumulator} against summing from scratch.
+ */
+public class GlobalTransAccumulatorTest {
+
+	private static final int[] AXIS_ORDER = {0, 1, 2};
+
+	private static final int W = 150, H = 70, T = 6;
+
+	@Test
+	public void testSumMatchesRecompute() {
+		final Random rng = new Random(0x7e5);
+		final float[] trans = new float[W * H * T];
+		for (int i = 0; i < trans.length; i++)
+			trans[i] = rng.nextFloat() * 20;
+		final float[] intensity = new float[W * H];
+		for (int i = 0; i < intensity.length; i++)
+			// negative and repeated intensities included
+			intensity[i] = rng.nextInt(400) - 20;
+		final Img<FloatType> transImg = ArrayImgs.floats(trans, W, H, T);
+		final Img<FloatType> intensityImg = ArrayImgs.floats(intensity, W, H, 1);
+		final GlobalTransAccumulator acc =
+				new GlobalTransAccumulator(transImg, intensityImg, AXIS_ORDER);
+
+		// small steps both ways, large jumps (summed from scratch) and both ends of the range
+		final float[] thresholds = {100, 101, 99, 99, 150, 30, 31, 380, -100, 1000, 0, -20, 379,
+				200.5f, 200, 5};
+		for (final float iThresh : thresholds)
+			assertSum(iThresh, recompute(trans, intensity, iThresh), acc.sumAbove(iThresh));
+		for (int i = 0; i < 200; i++) {
+			final float iThresh = rng.nextInt(440) - 30;
+			assertSum(iThresh, recompute(trans, intensity, iThresh), acc.sumAbove(iThresh));
+		}
+	}
+
+	private static double[] recompute(final float[] trans, final float[] intensity,
+			final float iThresh) {
+		final double[] sum = new double[T];
+		for (int i = 0; i < intensity.length; i++)
+			if (intensity[i] >= iThresh)
+				for (int t = 0; t < T; t++)
+					sum[t] += trans[t * W * H + i];
+		return sum;
+	}
+
+	private static void assertSum(final float iThresh, final double[] expected,
+			final float[] actual) {
+		assertEquals(expected.length, actual.length);
+		for (int t = 0; t < T; t++)
+			// both are summed in double, only rounded to float at the end
+			assertEquals("threshold " + iThresh + " t " + t, expected[t], actual[t],
+					Math.max(Math.abs(expected[t]) * 1e-6, 1e-3));
+	}
+}
@@ -0,0 +1,132 @@
+package flimlib.flimj.ui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.cell.CellImgFactory;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.view.Views;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link ImageStats} against a sort of the values.
+ */
+public class ImageStatsTest {
+
+	private static final double[] PERCENTILES = {0, 0.1, 1, 5, 25, 50, 75, 95, 99, 99.9, 100};
+
+	/** How far a percentile may be from its value, relative to its magnitude */
+	private static final double REL_TOLERANCE = 1.0 / (1 << 8);
+
+	@Test
+	public void testFlat() {
+		// enough rows for several tasks
+		final Img<FloatType> img = ArrayImgs.floats(300, 700);
+		fill(img, 1);
+		assertMatchesSort(img, null);
+	}
+
+	@Test
+	public void testNotFlat() {
+		final Img<FloatType> img = new CellImgFactory<>(new FloatType(), 32).create(130, 90);
+		fill(img, 2);
+		assertMatchesSort(img, null);
+	}
+
+	@Test
+	public void testStatusMasks() {
+		final Img<FloatType> img = ArrayImgs.floats(200, 400);
+		final Img<FloatType> status = ArrayImgs.floats(200, 400);
+		fill(img, 3);
+		final Random rng = new Random(4);
+		for (final FloatType s : status)
+			s.set(rng.nextInt(3) == 0 ? -1 : 0);
+		assertMatchesSort(img, status);
+	}
+
+	@Test
+	public void testOffsetView() {
+		final Img<FloatType> img = ArrayImgs.floats(80, 60);
+		fill(img, 5);
+		assertMatchesSort(Views.interval(Views.translate(img, -7, 11), new long[] {-5, 13},
+				new long[] {60, 60}), null);
+	}
+
+	@Test
+	public void testAllNaN() {
+		final Img<FloatType> img = ArrayImgs.floats(50, 20);
+		for (final FloatType v : img)
+			v.set(Float.NaN);
+		final ImageStats stats = ImageStats.of(img, null);
+		assertEquals(0, stats.getCount());
+		assertTrue(Double.isNaN(stats.getMin()));
+		assertTrue(Double.isNaN(stats.getMax()));
+		assertTrue(Double.isNaN(stats.getPercentile(50)));
+	}
+
+	@Test
+	public void testEmpty() {
+		final ImageStats stats = ImageStats.of(ArrayImgs.floats(0, 0), null);
+		assertEquals(0, stats.getCount());
+		assertTrue(Double.isNaN(stats.getPercentile(50)));
+	}
+
+	/**
+	 * Fills an image with negative and positive values of mixed magnitudes, zeros and NaN.
+	 *
+	 * @param img  the image
+	 * @param seed the random seed
+	 */
+	private static void fill(final Img<FloatType> img, final long seed) {
+		final Random rng = new Random(seed);
+		for (final FloatType v : img) {
+			final int kind = rng.nextInt(10);
+			if (kind == 0)
+				v.set(Float.NaN);
+			else if (kind == 1)
+				v.set(rng.nextBoolean() ? 0f : -0f);
+			else {
+				final double magnitude = Math.pow(10, rng.nextDouble() * 8 - 4);
+				v.set((float) (rng.nextBoolean() ? -magnitude : magnitude));
+			}
+		}
+	}
+
+	/**
+	 * @param img    the image
+	 * @param status the status, may be <code>null</code>
+	 */
+	private static void assertMatchesSort(final RandomAccessibleInterval<FloatType> img,
+			final RandomAccessibleInterval<FloatType> status) {
+		final float[] values = new float[(int) (img.dimension(0) * img.dimension(1))];
+		int n = 0;
+		final Cursor<FloatType> c = Views.flatIterable(img).cursor();
+		final Cursor<FloatType> s = status != null ? Views.flatIterable(status).cursor() : null;
+		while (c.hasNext()) {
+			final float v = c.next().get();
+			if (s != null && s.next().get() != 0 || Float.isNaN(v))
+				continue;
+			values[n++] = v;
+		}
+		final float[] sorted = Arrays.copyOf(values, n);
+		Arrays.sort(sorted);
+
+		final ImageStats stats = ImageStats.of(img, status);
+		assertEquals(n, stats.getCount());
+		assertEquals(sorted[0], stats.getMin(), 0);
+		assertEquals(sorted[n - 1], stats.getMax(), 0);
+		for (final double p : PERCENTILES) {
+			final float expected = sorted[(int) Math.round(p / 100 * (n - 1))];
+			assertEquals("percentile " + p, expected, stats.getPercentile(p),
+					Math.abs(expected) * REL_TOLERANCE + Float.MIN_NORMAL);
+		}
+	}
+}
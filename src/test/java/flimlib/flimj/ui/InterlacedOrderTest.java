@@ -0,0 +1,69 @@
+package flimlib.flimj.ui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Tests the passes of {@link InterlacedOrder}.
+ */
+public class InterlacedOrderTest {
+
+	private static final int[] AXIS_ORDER = {0, 1, 2};
+
+	@Test
+	public void testPassesCoverEveryPixelOnce() {
+		final int[][] sizes = {{1, 1}, {5, 3}, {8, 8}, {17, 9}, {64, 40}};
+		for (final int[] size : sizes) {
+			final int w = size[0], h = size[1];
+			final List<int[]> passes =
+					InterlacedOrder.passes(ArrayImgs.floats(w, h, 1), AXIS_ORDER);
+			assertEquals(InterlacedOrder.STRIDES.length, passes.size());
+
+			final int[] visits = new int[w * h];
+			for (int p = 0; p < passes.size(); p++) {
+				final int stride = InterlacedOrder.STRIDES[p];
+				for (final int i : passes.get(p)) {
+					visits[i]++;
+					final int x = i % w, y = i / w;
+					assertTrue(w + "x" + h + " pass " + p + " pixel " + i,
+							x % stride == 0 && y % stride == 0);
+					if (p > 0) {
+						final int coarser = InterlacedOrder.STRIDES[p - 1];
+						assertFalse(w + "x" + h + " pass " + p + " pixel " + i,
+								x % coarser == 0 && y % coarser == 0);
+					}
+				}
+			}
+			for (int i = 0; i < visits.length; i++)
+				assertEquals(w + "x" + h + " pixel " + i, 1, visits[i]);
+		}
+	}
+
+	@Test
+	public void testBrightestFirstWithinPass() {
+		final int w = 37, h = 29;
+		final Random rng = new Random(0x1ace);
+		final float[] data = new float[w * h];
+		for (int i = 0; i < data.length; i++)
+			// some negative intensities, which rank as 0
+			data[i] = rng.nextFloat() * 100 - 10;
+		final Img<FloatType> intensity = ArrayImgs.floats(data, w, h, 1);
+
+		for (final int[] pass : InterlacedOrder.passes(intensity, AXIS_ORDER))
+			for (int i = 1; i < pass.length; i++) {
+				final float prev = Math.max(data[pass[i - 1]], 0);
+				final float cur = Math.max(data[pass[i]], 0);
+				assertTrue(prev > cur || prev == cur && pass[i - 1] < pass[i]);
+			}
+	}
+}
@@ -0,0 +1,232 @@
+package flimlib.flimj.ui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+import flimlib.flimj.FitParams;
+import flimlib.flimj.FitResults;
+
+/**
+ * Tests how {@link LiveFitResults} assembles the maps of a dataset fit in progress.
+ */
+public class LiveFitResultsTest {
+
+	private static final int[] AXIS_ORDER = {0, 1, 2};
+
+	private static final int W = 40, H = 36, N_PARAM = 3;
+
+	@Test
+	public void testNothingPublishedIsNotFitted() {
+		final LiveFitResults live = new LiveFitResults(W, H, N_PARAM, AXIS_ORDER);
+		for (int y = 0; y < H; y++)
+			for (int x = 0; x < W; x++)
+				assertNotFitted(live, x, y);
+		assertTrue(live.drainDirty().isEmpty());
+	}
+
+	@Test
+	public void testPublishedTileIsCopiedAndDirty() {
+		final LiveFitResults live = new LiveFitResults(W, H, N_PARAM, AXIS_ORDER);
+		// the transient map being fitted starts at (4, 2)
+		final Interval fitted =
+				new FinalInterval(new long[] {4, 2, 0}, new long[] {W - 1, H - 1, 7});
+		final Interval tile = new FinalInterval(new long[] {34, 30, 0}, new long[] {39, 35, 7});
+		live.listenerFor(fitted, null).onTileComplete(tile, tileResults(tile, 5, 1));
+
+		for (int y = 0; y < H; y++)
+			for (int x = 0; x < W; x++)
+				if (x >= 30 && x < 36 && y >= 28 && y < 34)
+					assertFitted(live, x, y, x - 30 + 5, 1);
+				else
+					assertNotFitted(live, x, y);
+
+		// the tile straddles the blocks (0, 0), (1, 0), (0, 1) and (1, 1)
+		final List<Interval> dirty = live.drainDirty();
+		assertEquals(4, dirty.size());
+		final Interval last = dirty.get(3);
+		assertEquals(32, last.min(0));
+		assertEquals(32, last.min(1));
+		assertEquals(W - 1, last.max(0));
+		assertEquals(H - 1, last.max(1));
+		assertTrue(live.drainDirty().isEmpty());
+	}
+
+	@Test
+	public void testPackedTileIsScattered() {
+		final LiveFitResults live = new LiveFitResults(W, H, N_PARAM, AXIS_ORDER);
+		final int[] pixels = {5, W * 3 + 7, W * H - 1};
+		final PixelSubset subset = new PixelSubset(ArrayImgs.floats(W, H, 4), AXIS_ORDER, pixels);
+		final Interval tile = new FinalInterval(new long[] {0, 0, 0}, new long[] {2, 0, 3});
+		live.listenerFor(subset.getTrans(), subset).onTileComplete(tile, tileResults(tile, 0, -1));
+
+		assertFitted(live, 5, 0, 0, -1);
+		assertFitted(live, 7, 3, 1, -1);
+		assertFitted(live, W - 1, H - 1, 2, -1);
+		assertNotFitted(live, 6, 0);
+	}
+
+	@Test
+	public void testFitCancelledBeforeAnyTileYieldsNothing() {
+		final FitParams<FloatType> params = new FitParams<>();
+		params.ltAxis = AXIS_ORDER[2];
+		params.transMap = ArrayImgs.floats(W * 2, H * 2, 8);
+		final LiveFitResults live = new LiveFitResults(W * 2, H * 2, N_PARAM, AXIS_ORDER);
+		// no tile is started, so no op is needed
+		final TiledFitter fitter = new TiledFitter(null, 2);
+		try {
+			// FitProcessor shows the maps of before the fit again when this is null
+			assertNull(fitter.fit("LMA", params, live.listenerFor(params.transMap, null),
+					() -> true));
+		} finally {
+			fitter.shutdown();
+		}
+		assertTrue(live.drainDirty().isEmpty());
+		assertNotFitted(live, 0, 0);
+	}
+
+	@Test
+	public void testApproximationsAreMarkedAndReplaced() {
+		final LiveFitResults live = new LiveFitResults(W, H, N_PARAM, AXIS_ORDER);
+		final List<int[]> passes = InterlacedOrder.passes(ArrayImgs.floats(W, H, 1), AXIS_ORDER);
+		// a bad fit on the coarsest grid
+		final int bad = 8 * W + 8;
+		publishPass(live, passes.get(0), bad, 2);
+		live.fillFromGrid(InterlacedOrder.STRIDES[0]);
+		assertApproximated(live, InterlacedOrder.STRIDES[0], bad, 2);
+
+		// the next pass replaces the approximations of its pixels
+		publishPass(live, passes.get(1), -1, 0);
+		for (final int i : passes.get(1))
+			assertFitted(live, i % W, i / W, i, 0);
+		live.fillFromGrid(InterlacedOrder.STRIDES[1]);
+		assertApproximated(live, InterlacedOrder.STRIDES[1], bad, 2);
+	}
+
+	@Test
+	public void testClearApproximatedKeepsFittedPixels() {
+		final LiveFitResults live = new LiveFitResults(W, H, N_PARAM, AXIS_ORDER);
+		final List<int[]> passes = InterlacedOrder.passes(ArrayImgs.floats(W, H, 1), AXIS_ORDER);
+		final int bad = 0;
+		publishPass(live, passes.get(0), bad, 2);
+		live.fillFromGrid(InterlacedOrder.STRIDES[0]);
+		live.drainDirty();
+
+		// as when the fit is cancelled after the first pass
+		live.clearApproximated();
+		final int stride = InterlacedOrder.STRIDES[0];
+		for (int y = 0; y < H; y++)
+			for (int x = 0; x < W; x++)
+				if (x % stride == 0 && y % stride == 0)
+					assertFitted(live, x, y, y * W + x, y * W + x == bad ? 2 : 0);
+				else
+					assertNotFitted(live, x, y);
+		assertEquals(4, live.drainDirty().size());
+	}
+
+	/**
+	 * Publishes the pixels of a pass as one packed tile. The first parameter of each pixel is its
+	 * index, and its return code is 0 except for <code>bad</code>.
+	 */
+	private static void publishPass(final LiveFitResults live, final int[] pixels, final int bad,
+			final int badCode) {
+		final PixelSubset subset = new PixelSubset(ArrayImgs.floats(W, H, 4), AXIS_ORDER, pixels);
+		final Interval tile =
+				new FinalInterval(new long[] {0, 0, 0}, new long[] {pixels.length - 1, 0, 3});
+		final FitResults results = tileResults(tile, 0, 0);
+		final RandomAccess<FloatType> param = results.paramMap.randomAccess();
+		final RandomAccess<IntType> code = results.retCodeMap.randomAccess();
+		for (int i = 0; i < pixels.length; i++) {
+			param.setPosition(new int[] {i, 0, 0});
+			param.get().set(pixels[i]);
+			code.setPosition(new int[] {i, 0, 0});
+			code.get().set(pixels[i] == bad ? badCode : 0);
+		}
+		live.listenerFor(subset.getTrans(), subset).onTileComplete(tile, results);
+	}
+
+	/**
+	 * Checks that the pixels off the grid of <code>stride</code> copy the parameters of their
+	 * nearest grid pixel, have the status {@link LiveFitResults#RET_APPROXIMATED} and are
+	 * displayed like their grid pixel if that is a bad fit.
+	 */
+	private static void assertApproximated(final LiveFitResults live, final int stride,
+			final int bad, final int badCode) {
+		for (int y = 0; y < H; y++)
+			for (int x = 0; x < W; x++) {
+				final int gx = Math.min(Math.round((float) x / stride), (W - 1) / stride) * stride;
+				final int gy = Math.min(Math.round((float) y / stride), (H - 1) / stride) * stride;
+				final int src = gy * W + gx;
+				final int srcCode = src == bad ? badCode : 0;
+				if (gx == x && gy == y) {
+					assertFitted(live, x, y, src, srcCode);
+					continue;
+				}
+				assertEquals(src, get(live.getParamMap(), x, y, 0), 0);
+				assertEquals(LiveFitResults.RET_APPROXIMATED, get(live.getStatus(), x, y, 0), 0);
+				assertEquals(srcCode != 0 ? srcCode : LiveFitResults.RET_APPROXIMATED,
+						get(live.getDisplayStatus(), x, y, 0), 0);
+			}
+	}
+
+	/**
+	 * Makes the results of a tile where the first parameter is the x coordinate in the tile plus
+	 * <code>param0</code> and the others are the parameter index.
+	 */
+	static FitResults tileResults(final Interval tile, final int param0, final int retCode) {
+		final int tileW = (int) tile.dimension(0);
+		final int tileH = (int) tile.dimension(1);
+		final Img<FloatType> params = ArrayImgs.floats(tileW, tileH, N_PARAM);
+		final RandomAccess<FloatType> ra = params.randomAccess();
+		for (int y = 0; y < tileH; y++)
+			for (int x = 0; x < tileW; x++) {
+				ra.setPosition(new int[] {x, y, 0});
+				ra.get().set(x + param0);
+				for (int l = 1; l < N_PARAM; l++) {
+					ra.fwd(2);
+					ra.get().set(l);
+				}
+			}
+		final Img<IntType> codes = ArrayImgs.ints(tileW, tileH, 1);
+		for (final IntType code : codes)
+			code.set(retCode);
+		final FitResults results = new FitResults();
+		results.paramMap = params;
+		results.retCodeMap = codes;
+		return results;
+	}
+
+	static void assertFitted(final LiveFitResults live, final int x, final int y,
+			final float param0, final int retCode) {
+		assertEquals(param0, get(live.getParamMap(), x, y, 0), 0);
+		for (int l = 1; l < N_PARAM; l++)
+			assertEquals(l, get(live.getParamMap(), x, y, l), 0);
+		assertEquals(retCode, get(live.getStatus(), x, y, 0), 0);
+		assertEquals(retCode, get(live.getDisplayStatus(), x, y, 0), 0);
+	}
+
+	static void assertNotFitted(final LiveFitResults live, final int x, final int y) {
+		for (int l = 0; l < N_PARAM; l++)
+			assertTrue(Float.isNaN(get(live.getParamMap(), x, y, l)));
+		assertEquals(TiledFitter.RET_NOT_FITTED, get(live.getStatus(), x, y, 0), 0);
+		assertEquals(TiledFitter.RET_NOT_FITTED, get(live.getDisplayStatus(), x, y, 0), 0);
+	}
+
+	static float get(final Img<FloatType> img, final int x, final int y, final int l) {
+		final RandomAccess<FloatType> ra = img.randomAccess();
+		ra.setPosition(new int[] {x, y, l});
+		return ra.get().get();
+	}
+}
@@ -0,0 +1,111 @@
+package flimlib.flimj.ui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import net.imglib2.converter.RealLUTConverter;
+import net.imglib2.display.ColorTable;
+import net.imglib2.display.ColorTable16;
+import net.imglib2.display.ColorTable8;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Tests that the 8-bit path of {@link PreviewImageDisplay} (values quantized by
+ * {@link LutPalette#bin} and colored through {@link LutPalette#of}) reproduces the output of
+ * {@link RealLUTConverter}.
+ */
+public class LutPaletteTest {
+
+	private static final double[][] RANGES = {{0, 1}, {-3.7, 12.9}, {1e-3, 2.5e-3}, {-50, -2},
+			{0.1, 0.1 + 1e-9}, {-1e6, 1e6}};
+
+	@Test
+	public void testMatchesConverter256() {
+		assertMatchesConverter(makeLut(256, 1));
+	}
+
+	@Test
+	public void testMatchesConverterShortLut() {
+		assertMatchesConverter(makeLut(7, 2));
+		assertMatchesConverter(makeLut(1, 3));
+	}
+
+	@Test
+	public void testFits() {
+		assertTrue(LutPalette.fits(makeLut(256, 4)));
+		assertFalse(LutPalette.fits(new ColorTable16(new short[257], new short[257],
+				new short[257])));
+	}
+
+	@Test
+	public void testNewLutRebuildsColors() {
+		final LutPalette palette = new LutPalette();
+		final ColorTable8 a = makeLut(256, 5), b = makeLut(256, 6);
+		assertEquals(a.lookupARGB(0, 1, 0.5), palette.of(a)[LutPalette.bin(256, 0, 1, 0.5)]);
+		assertEquals(b.lookupARGB(0, 1, 0.5), palette.of(b)[LutPalette.bin(256, 0, 1, 0.5)]);
+	}
+
+	/**
+	 * Compares both paths over random values in and around each range, the bounds, the values
+	 * closest to them, the bin edges, infinities and NaN.
+	 *
+	 * @param lut the LUT
+	 */
+	private static void assertMatchesConverter(final ColorTable lut) {
+		final LutPalette palette = new LutPalette();
+		final int bins = lut.getLength();
+		final Random rng = new Random(42);
+		final FloatType in = new FloatType();
+		final ARGBType out = new ARGBType();
+		for (final double[] range : RANGES) {
+			final double min = range[0], max = range[1];
+			final RealLUTConverter<FloatType> conv = new RealLUTConverter<>(min, max, lut);
+			final int[] colors = palette.of(lut);
+
+			final double span = max - min;
+			final double[] special = {min, max, Math.nextUp(min), Math.nextDown(max),
+					Math.nextDown(min), Math.nextUp(max), Double.NaN, Double.POSITIVE_INFINITY,
+					Double.NEGATIVE_INFINITY, min - span, max + span};
+			for (final double v : special)
+				assertColor(conv, colors, bins, min, max, (float) v, in, out);
+			for (int i = 0; i <= bins; i++) {
+				final float edge = (float) (min + span * i / bins);
+				assertColor(conv, colors, bins, min, max, edge, in, out);
+				assertColor(conv, colors, bins, min, max, Math.nextUp(edge), in, out);
+				assertColor(conv, colors, bins, min, max, Math.nextDown(edge), in, out);
+			}
+			for (int i = 0; i < 10000; i++) {
+				final float v = (float) (min - span / 4 + rng.nextDouble() * span * 1.5);
+				assertColor(conv, colors, bins, min, max, v, in, out);
+			}
+		}
+	}
+
+	private static void assertColor(final RealLUTConverter<FloatType> conv, final int[] colors,
+			final int bins, final double min, final double max, final float v,
+			final FloatType in, final ARGBType out) {
+		in.set(v);
+		conv.convert(in, out);
+		assertEquals("value " + v + " in [" + min + ", " + max + "]", out.get(),
+				colors[LutPalette.bin(bins, min, max, v)]);
+	}
+
+	/**
+	 * @param length the number of entries
+	 * @param seed   the random seed
+	 * @return a LUT of random colors
+	 */
+	private static ColorTable8 makeLut(final int length, final long seed) {
+		final Random rng = new Random(seed);
+		final byte[][] rgb = new byte[3][length];
+		for (final byte[] c : rgb)
+			rng.nextBytes(c);
+		return new ColorTable8(rgb);
+	}
+}
@@ -0,0 +1,137 @@
+package flimlib.flimj.ui;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import net.imagej.ops.OpService;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.scijava.Context;
+
+import flimlib.flimj.FlimOps;
+
+/**
+ * Checks {@link SummedAreaBinner} against the square-kernel convolution it replaced.
+ */
+public class SummedAreaBinnerTest {
+
+	private static final int W = 23, H = 17, T = 8;
+
+	private static final int[] AXIS_ORDER = {0, 1, 2};
+
+	/** FFT convolution is only accurate to float rounding */
+	private static final float TOLERANCE = 1e-3f;
+
+	private static Context context;
+
+	private static OpService ops;
+
+	private static Img<FloatType> trans, intensity;
+
+	@BeforeClass
+	public static void setUp() {
+		context = new Context(OpService.class);
+		ops = context.service(OpService.class);
+
+		// some negative values so that kernels summing to less than 0 are clamped
+		final Random rng = new Random(0x5a7);
+		final float[] data = new float[W * H * T];
+		for (int i = 0; i < data.length; i++)
+			data[i] = rng.nextFloat() * 10 - 3;
+		trans = ArrayImgs.floats(data, W, H, T);
+		intensity = ArrayImgs.floats(W, H, 1);
+		final RandomAccess<FloatType> ra = intensity.randomAccess();
+		final RandomAccess<FloatType> src = trans.randomAccess();
+		for (int y = 0; y < H; y++)
+			for (int x = 0; x < W; x++) {
+				float sum = 0;
+				src.setPosition(new int[] {x, y, 0});
+				for (int t = 0; t < T; t++, src.fwd(2))
+					sum += src.get().get();
+				ra.setPosition(new int[] {x, y, 0});
+				ra.get().set(sum);
+			}
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		context.dispose();
+	}
+
+	@Test
+	public void testBinTransMatchesConvolution() {
+		final SummedAreaBinner binner = new SummedAreaBinner(trans, intensity, AXIS_ORDER);
+		// radius 12 spans the whole image from any pixel
+		for (final int radius : new int[] {1, 2, 5, 12})
+			assertImgEquals("radius " + radius, convolve(trans, radius, true),
+					binner.binTrans(radius));
+	}
+
+	@Test
+	public void testBinIntensityMatchesConvolution() {
+		final SummedAreaBinner binner = new SummedAreaBinner(trans, intensity, AXIS_ORDER);
+		for (final int radius : new int[] {1, 3, 12})
+			assertImgEquals("radius " + radius, convolve(intensity, radius, false),
+					binner.binIntensity(radius));
+	}
+
+	@Test
+	public void testFillTransMatchesBinTrans() {
+		final SummedAreaBinner binner = new SummedAreaBinner(trans, intensity, AXIS_ORDER);
+		final float[] transArr = new float[T];
+		for (final int radius : new int[] {1, 4}) {
+			final RandomAccess<FloatType> expected = binner.binTrans(radius).randomAccess();
+			// corners, borders and the interior, revisiting rows that are cached by then
+			final int[][] positions =
+					{{0, 0}, {W - 1, 0}, {0, H - 1}, {W - 1, H - 1}, {11, 0}, {11, 8}, {12, 8},
+							{11, 9}, {0, 8}, {11, 8}};
+			for (final int[] pos : positions) {
+				binner.fillTrans(transArr, pos[0], pos[1], radius);
+				expected.setPosition(new int[] {pos[0], pos[1], 0});
+				for (int t = 0; t < T; t++, expected.fwd(2))
+					assertEquals("radius " + radius + " at (" + pos[0] + ", " + pos[1] + ") t " + t,
+							expected.get().get(), transArr[t], TOLERANCE);
+			}
+		}
+	}
+
+	/**
+	 * Bins the way FitProcessor did before summed-area tables: a zero-padded convolution with a
+	 * square kernel, with negative values clamped for the transients only.
+	 */
+	private static RandomAccessibleInterval<FloatType> convolve(final Img<FloatType> img,
+			final int radius, final boolean clamp) {
+		final RandomAccessibleInterval<FloatType> out =
+				ops.filter().convolve(img, FlimOps.makeSquareKernel(radius * 2 + 1));
+		if (clamp)
+			for (final FloatType f : Views.iterable(out))
+				f.set(Math.max(f.get(), 0));
+		return out;
+	}
+
+	private static void assertImgEquals(final String message,
+			final RandomAccessibleInterval<FloatType> expected,
+			final RandomAccessibleInterval<FloatType> actual) {
+		for (int d = 0; d < expected.numDimensions(); d++)
+			assertEquals(message + " dimension " + d, expected.dimension(d), actual.dimension(d));
+		final RandomAccess<FloatType> ra = Views.zeroMin(actual).randomAccess();
+		final Cursor<FloatType> c = Views.iterable(Views.zeroMin(expected)).localizingCursor();
+		while (c.hasNext()) {
+			c.fwd();
+			ra.setPosition(c);
+			assertEquals(message + " at " + Util.printCoordinates(c), c.get().get(),
+					ra.get().get(), TOLERANCE);
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package flimlib.flimj.ui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.function.IntUnaryOperator;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link UniqueDecays#find}.
+ */
+public class UniqueDecaysTest {
+
+	private static final int[] AXIS_ORDER = {0, 1, 2};
+
+	private static final int T = 4;
+
+	@Test
+	public void testGroupsAndScatters() {
+		final int w = 8, h = 8;
+		// 2 x 4 blocks of the same decay
+		final Img<FloatType> map = makeMap(w, h, i -> (i % w) / 2 + 4 * (i / w / 4));
+		final UniqueDecays decays = UniqueDecays.find(map, AXIS_ORDER);
+		assertNotNull(decays);
+		assertEquals(8, decays.size());
+
+		// a map holding the index of each distinct decay comes back as the id of each pixel
+		final float[] ids = new float[decays.size()];
+		for (int u = 0; u < ids.length; u++)
+			ids[u] = u;
+		final RandomAccess<FloatType> scattered =
+				decays.scatter(ArrayImgs.floats(ids, ids.length, 1, 1)).randomAccess();
+		final RandomAccess<FloatType> packed = decays.getTrans().randomAccess();
+		final RandomAccess<FloatType> orig = map.randomAccess();
+		for (int y = 0; y < h; y++)
+			for (int x = 0; x < w; x++) {
+				scattered.setPosition(new int[] {x, y, 0});
+				final int u = (int) scattered.get().get();
+				packed.setPosition(new int[] {u, 0, 0});
+				orig.setPosition(new int[] {x, y, 0});
+				for (int t = 0; t < T; t++, packed.fwd(2), orig.fwd(2))
+					assertEquals(orig.get().get(), packed.get().get(), 0);
+			}
+	}
+
+	@Test
+	public void testFallbackThreshold() {
+		final int w = 8, h = 8;
+		final int maxUnique = UniqueDecays.maxUnique(w * h);
+		assertEquals(56, maxUnique);
+		// pixels past the distinct ones repeat the first decay
+		final UniqueDecays atLimit =
+				UniqueDecays.find(makeMap(w, h, i -> i < maxUnique ? i : 0), AXIS_ORDER);
+		assertNotNull(atLimit);
+		assertEquals(maxUnique, atLimit.size());
+		assertNull(UniqueDecays.find(makeMap(w, h, i -> i <= maxUnique ? i : 0), AXIS_ORDER));
+	}
+
+	@Test
+	public void testCollisionsAreVerified() {
+		final Img<FloatType> map = makeMap(8, 8, i -> i % 3);
+		assertNotNull(UniqueDecays.find(map, AXIS_ORDER));
+		// every decay hashes the same, so the 3 different ones collide
+		assertNull(UniqueDecays.find(map, AXIS_ORDER, (hash, bits) -> 0));
+		// a hash that still tells them apart
+		final UniqueDecays weak = UniqueDecays.find(map, AXIS_ORDER, (hash, bits) -> hash + bits);
+		assertNotNull(weak);
+		assertEquals(3, weak.size());
+	}
+
+	@Test
+	public void testSampleTurnsDownDistinctPrefix() {
+		final int w = 256, h = 2 * UniqueDecays.SAMPLE_PIXELS / w;
+		final int nSample = UniqueDecays.SAMPLE_PIXELS;
+		// half of all pixels share a decay, but none of the sampled ones do
+		assertNull(UniqueDecays.find(makeMap(w, h, i -> i < nSample ? i : nSample), AXIS_ORDER));
+		// the same proportion with the duplicates first is grouped
+		final UniqueDecays decays = UniqueDecays.find(
+				makeMap(w, h, i -> i < nSample ? 0 : i - nSample + 1), AXIS_ORDER);
+		assertNotNull(decays);
+		assertEquals(nSample + 1, decays.size());
+	}
+
+	/**
+	 * @param w     the width
+	 * @param h     the height
+	 * @param decay the id of the decay of each pixel (y * w + x)
+	 * @return a w x h x {@link #T} map where pixels of the same id have the same decay
+	 */
+	private static Img<FloatType> makeMap(final int w, final int h, final IntUnaryOperator decay) {
+		final float[] data = new float[w * h * T];
+		for (int i = 0; i < w * h; i++)
+			for (int t = 0; t < T; t++)
+				data[t * w * h + i] = decay.applyAsInt(i) * T + t;
+		return ArrayImgs.floats(data, w, h, T);
+	}
+}
@@ -0,0 +1,164 @@
+package flimlib.flimj.ui.controller;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptEngineManager;
+
+import javafx.application.Platform;
+import javafx.embed.swing.JFXPanel;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests that every FXML of the UI loads without a script engine, and reports how long each takes
+ * to load.
+ */
+public class FXMLLoadTest {
+
+	private static final String[] FXML_NAMES = {"plugin-layout", "preview-tab", "plot-tab",
+			"settings-tab", "export-tab", "config-tab", "preview-colorbar"};
+
+	/** The number of timed loads of each FXML */
+	private static final int TIMED_LOADS = 10;
+
+	/** Processing instructions, elements and event handlers that need a script engine */
+	private static final Pattern SCRIPT = Pattern.compile(
+			"<\\?language\\b|<fx:script\\b|\\son[A-Z]\\w*\\s*=\\s*\"(?![#$])");
+
+	private static final String ENGINE_SERVICE =
+			"META-INF/services/" + ScriptEngineFactory.class.getName();
+
+	private static boolean toolkitStarted;
+
+	@BeforeClass
+	public static void startToolkit() {
+		try {
+			// starts the toolkit, as the plugin does
+			new JFXPanel();
+			Platform.setImplicitExit(false);
+			toolkitStarted = true;
+		}
+		catch (final Throwable e) {
+			// e.g. headless
+			toolkitStarted = false;
+		}
+	}
+
+	@Test
+	public void testNoScripts() throws IOException {
+		for (final String name : FXML_NAMES) {
+			final String fxml = read(name);
+			assertFalse(name + ".fxml needs a script engine", SCRIPT.matcher(fxml).find());
+		}
+	}
+
+	@Test
+	public void testLoadWithoutScriptEngines() throws Exception {
+		assumeTrue("no JavaFX toolkit", toolkitStarted);
+		onFXThread(() -> {
+			final Thread thread = Thread.currentThread();
+			final ClassLoader original = thread.getContextClassLoader();
+			thread.setContextClassLoader(new NoScriptEnginesClassLoader(original));
+			try {
+				// FXMLLoader looks engines up through the context class loader
+				assumeTrue("script engines cannot be hidden on this JVM",
+						new ScriptEngineManager().getEngineFactories().isEmpty());
+				for (final String name : FXML_NAMES)
+					assertNotNull(name, AbstractCtrl.getFXMLLoader(name).load());
+			}
+			finally {
+				thread.setContextClassLoader(original);
+			}
+			return null;
+		});
+	}
+
+	@Test
+	public void testLoadTimes() throws Exception {
+		assumeTrue("no JavaFX toolkit", toolkitStarted);
+		onFXThread(() -> {
+			for (final String name : FXML_NAMES) {
+				long start = System.nanoTime();
+				AbstractCtrl.getFXMLLoader(name).load();
+				final long first = System.nanoTime() - start;
+				start = System.nanoTime();
+				for (int i = 0; i < TIMED_LOADS; i++)
+					AbstractCtrl.getFXMLLoader(name).load();
+				final long average = (System.nanoTime() - start) / TIMED_LOADS;
+				System.out.printf("%s.fxml: first load %.1f ms, then %.1f ms on average%n", name,
+						first / 1e6, average / 1e6);
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * Hides the script engine factories registered as services.
+	 */
+	private static class NoScriptEnginesClassLoader extends ClassLoader {
+
+		NoScriptEnginesClassLoader(final ClassLoader parent) {
+			super(parent);
+		}
+
+		@Override
+		public URL getResource(final String name) {
+			return ENGINE_SERVICE.equals(name) ? null : super.getResource(name);
+		}
+
+		@Override
+		public Enumeration<URL> getResources(final String name) throws IOException {
+			return ENGINE_SERVICE.equals(name) ? Collections.emptyEnumeration()
+					: super.getResources(name);
+		}
+	}
+
+	/**
+	 * @param name the name of the FXML
+	 * @return its content
+	 */
+	private static String read(final String name) throws IOException {
+		try (InputStream in = AbstractCtrl.class.getClassLoader()
+				.getResourceAsStream(AbstractCtrl.FXML_DIR + name + ".fxml")) {
+			assertNotNull(name + ".fxml not found", in);
+			try (Scanner scanner = new Scanner(in, StandardCharsets.UTF_8.name())) {
+				return scanner.useDelimiter("\\A").hasNext() ? scanner.next() : "";
+			}
+		}
+	}
+
+	/**
+	 * Runs a task on the FX thread and waits for it, rethrowing what it throws.
+	 *
+	 * @param task the task
+	 */
+	private static void onFXThread(final Callable<Void> task) throws Exception {
+		final FutureTask<Void> future = new FutureTask<>(task);
+		Platform.runLater(future);
+		try {
+			future.get(1, TimeUnit.MINUTES);
+		}
+		catch (final ExecutionException e) {
+			if (e.getCause() instanceof Exception)
+				throw (Exception) e.getCause();
+			throw (Error) e.getCause();
+		}
+	}
+}
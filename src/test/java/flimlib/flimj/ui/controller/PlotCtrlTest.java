@@ -0,0 +1,164 @@
+package flimlib.flimj.ui.controller;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+import javafx.scene.paint.Color;
+
+import flimlib.flimj.ui.PlotCanvas.Trace;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that refreshing the plot with {@link PlotCtrl#fillSeries} reuses the series buffers and
+ * the photon count prefix sum.
+ */
+public class PlotCtrlTest {
+
+	private static final int N_BINS = 256;
+
+	private static final int IRF_BINS = 64;
+
+	private static final int REFRESHES = 2000;
+
+	/** The bytes a refresh may allocate on average (i.e. none, plus measurement noise) */
+	private static final long ALLOCATION_SLACK = 16;
+
+	private Trace[] traces;
+
+	private float[][] transients;
+
+	private float[] instr, residuals, yFit;
+
+	@Before
+	public void setUp() {
+		traces = new Trace[PlotCtrl.N_PLOTS];
+		for (int i = 0; i < traces.length; i++)
+			traces[i] = new Trace(Color.BLACK, i);
+		final Random rng = new Random(1);
+		transients = new float[8][];
+		for (int t = 0; t < transients.length; t++)
+			transients[t] = random(rng, N_BINS);
+		instr = random(rng, IRF_BINS);
+		residuals = random(rng, N_BINS - 20);
+		yFit = random(rng, N_BINS - 20);
+	}
+
+	@Test
+	public void testBuffersKeepTheirIdentity() {
+		float[] prefixSum = refresh(new float[1], 0, false);
+		final float[] firstPrefixSum = prefixSum;
+		final float[][] firstBuffers = buffers();
+		for (int r = 1; r < 100; r++) {
+			prefixSum = refresh(prefixSum, r, r % 10 == 0);
+			assertSame(firstPrefixSum, prefixSum);
+			final float[][] buffers = buffers();
+			for (int i = 0; i < buffers.length; i++)
+				assertSame(firstBuffers[i], buffers[i]);
+		}
+	}
+
+	@Test
+	public void testPrefixSum() {
+		float[] prefixSum = refresh(new float[1], 3, false);
+		assertEquals(N_BINS + 1, prefixSum.length);
+		assertEquals(0, prefixSum[0], 0);
+		final float[] trans = transients[3];
+		for (int i = 0; i < N_BINS; i++)
+			assertEquals(prefixSum[i] + trans[i], prefixSum[i + 1], 0);
+
+		// the IRF while it is picked
+		prefixSum = refresh(prefixSum, 3, true);
+		for (int i = 0; i < IRF_BINS; i++)
+			assertEquals(prefixSum[i] + instr[i], prefixSum[i + 1], 0);
+	}
+
+	@Test
+	public void testSeries() {
+		final int fitStart = 30, irfPrefixLen = 10;
+		PlotCtrl.fillSeries(traces, new float[1], transients[0], null, residuals, yFit, fitStart,
+				irfPrefixLen, false);
+		assertEquals(N_BINS, traces[PlotCtrl.TRN_IDX].getLength());
+		assertEquals(0, traces[PlotCtrl.IRF_IDX].getLength());
+		final float[] fit = traces[PlotCtrl.FIT_IDX].resize(N_BINS);
+		final float[] res = traces[PlotCtrl.RES_IDX].resize(N_BINS);
+		for (int i = 0; i < N_BINS; i++) {
+			final int idx = i - fitStart + irfPrefixLen;
+			final boolean inFit = idx >= 0 && idx < yFit.length;
+			assertEquals(inFit ? yFit[idx] : 0, fit[i], 0);
+			assertEquals(inFit ? residuals[idx] : 0, res[i], 0);
+		}
+		final float[] trans = traces[PlotCtrl.TRN_IDX].resize(N_BINS);
+		assertArrayEquals(transients[0], Arrays.copyOf(trans, N_BINS), 0);
+	}
+
+	@Test
+	public void testMoreBinsReallocate() {
+		final float[] prefixSum = refresh(new float[1], 0, false);
+		final float[] longer = new float[N_BINS * 2];
+		final float[] grown = PlotCtrl.fillSeries(traces, prefixSum, longer, instr, residuals,
+				yFit, 0, 0, false);
+		assertNotSame(prefixSum, grown);
+		assertEquals(longer.length + 1, grown.length);
+		assertEquals(longer.length, traces[PlotCtrl.TRN_IDX].getLength());
+	}
+
+	@Test
+	public void testRefreshDoesNotAllocate() {
+		assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		final com.sun.management.ThreadMXBean bean =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		assumeTrue(bean.isThreadAllocatedMemorySupported());
+		bean.setThreadAllocatedMemoryEnabled(true);
+		final long thread = Thread.currentThread().getId();
+
+		float[] prefixSum = new float[1];
+		// warm up so that the loop below is compiled
+		for (int r = 0; r < REFRESHES; r++)
+			prefixSum = refresh(prefixSum, r, r % 10 == 0);
+
+		final long before = bean.getThreadAllocatedBytes(thread);
+		for (int r = 0; r < REFRESHES; r++)
+			prefixSum = refresh(prefixSum, r, r % 10 == 0);
+		final long allocated = bean.getThreadAllocatedBytes(thread) - before;
+		assertTrue(allocated + " bytes allocated over " + REFRESHES + " refreshes",
+				allocated <= ALLOCATION_SLACK * REFRESHES);
+	}
+
+	/**
+	 * @param prefixSum  the prefix sum of the previous refresh
+	 * @param r          the index of the refresh, picks the transient
+	 * @param pickingIRF <code>true</code> if the IRF is being picked
+	 * @return the prefix sum
+	 */
+	private float[] refresh(final float[] prefixSum, final int r, final boolean pickingIRF) {
+		return PlotCtrl.fillSeries(traces, prefixSum, transients[r % transients.length], instr,
+				residuals, yFit, 20, 0, pickingIRF);
+	}
+
+	/**
+	 * @return the buffer of each series, resized to its current length
+	 */
+	private float[][] buffers() {
+		final float[][] buffers = new float[traces.length][];
+		for (int i = 0; i < traces.length; i++)
+			buffers[i] = traces[i].resize(traces[i].getLength());
+		return buffers;
+	}
+
+	private static float[] random(final Random rng, final int length) {
+		final float[] values = new float[length];
+		for (int i = 0; i < length; i++)
+			values[i] = rng.nextFloat() * 1000;
+		return values;
+	}
+}